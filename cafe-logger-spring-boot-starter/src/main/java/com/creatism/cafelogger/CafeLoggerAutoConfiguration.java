@@ -3,12 +3,19 @@ package com.creatism.cafelogger;
 import com.creatism.cafelogger.core.CafeLoggerApplicationRunner;
 import com.creatism.cafelogger.core.CafeLoggerBeanDefinitionRegistryPostProcessor;
 import com.creatism.cafelogger.core.CafeLoggerBeanPostProcessor;
+import com.creatism.cafelogger.core.CafeLoggerConfugurationHolder;
 import com.creatism.cafelogger.core.CafeLoggerKafkaProducer;
 import com.creatism.cafelogger.feign.CafeLoggerFeignLoggerListener;
+import com.creatism.cafelogger.metrics.CafeLoggerLatencyMetrics;
+import com.creatism.cafelogger.properties.CafeLoggerMetricsProperties;
+import com.creatism.cafelogger.properties.CafeLoggerProperties;
 import com.creatism.cafelogger.request.DefaultEventListener;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
 import okhttp3.OkHttpClient;
 import org.springframework.beans.factory.support.BeanDefinitionRegistryPostProcessor;
 import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -69,4 +76,19 @@ public class CafeLoggerAutoConfiguration {
         return executor;
     }
 
+    /**
+     * latency histograms of the pointcuts, exported when micrometer is on the classpath
+     */
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass(MeterRegistry.class)
+    static class CafeLoggerMetricsConfiguration {
+
+        @Bean
+        public MeterBinder cafeLoggerLatencyMetrics() {
+            CafeLoggerProperties properties = CafeLoggerConfugurationHolder.getConfig();
+            return new CafeLoggerLatencyMetrics(properties != null && properties.getMetrics() != null
+                    ? properties.getMetrics().getPercentiles() : new CafeLoggerMetricsProperties().getPercentiles());
+        }
+    }
+
 }
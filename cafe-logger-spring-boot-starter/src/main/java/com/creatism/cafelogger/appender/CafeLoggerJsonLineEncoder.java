@@ -0,0 +1,37 @@
+package com.creatism.cafelogger.appender;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.encoder.EncoderBase;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * writes one record per line, a record logged as its encoded JSON ({@code log.info("{}", new CafeLoggerJsonRecord(bytes))})
+ * is written as is instead of being formatted and encoded again
+ * @author pengcheng
+ */
+public class CafeLoggerJsonLineEncoder extends EncoderBase<ILoggingEvent> {
+
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+    @Override
+    public byte[] headerBytes() {
+        return null;
+    }
+
+    @Override
+    public byte[] encode(ILoggingEvent event) {
+        Object[] arguments = event.getArgumentArray();
+        byte[] record = arguments != null && arguments.length == 1 && arguments[0] instanceof CafeLoggerJsonRecord json
+                ? json.bytes() : event.getFormattedMessage().getBytes(StandardCharsets.UTF_8);
+        byte[] line = new byte[record.length + LINE_SEPARATOR.length];
+        System.arraycopy(record, 0, line, 0, record.length);
+        System.arraycopy(LINE_SEPARATOR, 0, line, record.length, LINE_SEPARATOR.length);
+        return line;
+    }
+
+    @Override
+    public byte[] footerBytes() {
+        return null;
+    }
+}
@@ -0,0 +1,29 @@
+package com.creatism.cafelogger.appender;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * an encoded cafe log passed as logging argument, {@link CafeLoggerJsonLineEncoder} writes its bytes as is while any
+ * other appender formats it as its JSON text
+ * @author pengcheng
+ */
+public final class CafeLoggerJsonRecord {
+
+    private final byte[] json;
+
+    /**
+     * @param json UTF-8 JSON
+     */
+    public CafeLoggerJsonRecord(byte[] json) {
+        this.json = json;
+    }
+
+    public byte[] bytes() {
+        return json;
+    }
+
+    @Override
+    public String toString() {
+        return new String(json, StandardCharsets.UTF_8);
+    }
+}
@@ -2,26 +2,26 @@ package com.creatism.cafelogger.appender;
 
 import ch.qos.logback.classic.AsyncAppender;
 import ch.qos.logback.classic.spi.ILoggingEvent;
-import org.springframework.kafka.core.KafkaTemplate;
+import com.creatism.cafelogger.core.CafeLoggerKafkaProducer;
 
 /**
- * custom kafka appender
+ * custom kafka appender, the messages go through the cafe logger pipeline and sender
  * @author xuyu
  */
 public class CafeLoggerKafkaAsyncAppender extends AsyncAppender {
 
-    private static KafkaTemplate template;
-
     private String topic;
 
     @Override
     protected void append(ILoggingEvent eventObject) {
         String msg = eventObject.getFormattedMessage();
-        template.send(topic, msg);
+        if (!CafeLoggerKafkaProducer.asyncSendToKafka(topic, msg)) {
+            addWarn("cafe logger is not initialized, message not sent to topic " + topic);
+        }
         super.append(eventObject);
     }
 
-    private void setTopic(String topic) {
+    public void setTopic(String topic) {
         this.topic = topic;
     }
 }
@@ -1,6 +1,7 @@
 package com.creatism.cafelogger.core;
 
 import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.boot.ApplicationArguments;
 import org.springframework.boot.ApplicationRunner;
 import org.springframework.context.ApplicationContext;
@@ -15,7 +16,7 @@ import static com.creatism.cafelogger.core.CafeLoggerConstants.APP_NAME_PROPERTY
  * add cafe logger into {@link ch.qos.logback.classic.LoggerContext} cache after spring boot starting
  * @author xuyu
  */
-public class CafeLoggerApplicationRunner implements ApplicationRunner, EnvironmentAware, ApplicationContextAware {
+public class CafeLoggerApplicationRunner implements ApplicationRunner, EnvironmentAware, ApplicationContextAware, DisposableBean {
 
     private Environment environment;
     private ApplicationContext applicationContext;
@@ -28,6 +29,11 @@ public class CafeLoggerApplicationRunner implements ApplicationRunner, Environme
         CafeLoggerKafkaProducer.init((KafkaTemplate) kafBean, appName);
     }
 
+    @Override
+    public void destroy() {
+        CafeLoggerKafkaProducer.shutdown();
+    }
+
     @Override
     public void setEnvironment(Environment environment) {
         this.environment = environment;
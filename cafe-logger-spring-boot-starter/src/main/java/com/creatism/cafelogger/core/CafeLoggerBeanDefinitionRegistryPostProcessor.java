@@ -1,5 +1,7 @@
 package com.creatism.cafelogger.core;
 
+import com.creatism.cafelogger.properties.CafeLoggerMetricsProperties;
+import com.creatism.cafelogger.properties.CafeLoggerPcsProperties;
 import com.creatism.cafelogger.properties.CafeLoggerProperties;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.aop.aspectj.AspectJExpressionPointcut;
@@ -55,7 +57,7 @@ public class CafeLoggerBeanDefinitionRegistryPostProcessor implements BeanDefini
                 pointcut.setExpression(i.getPointcut());
                 BeanDefinitionBuilder builder = BeanDefinitionBuilder.rootBeanDefinition(DefaultPointcutAdvisor.class);
                 builder.addConstructorArgValue(pointcut);
-                builder.addConstructorArgValue(new CafeLoggerInterceptor(i.getTopic()));
+                builder.addConstructorArgValue(new CafeLoggerInterceptor(i.getTopic(), latencyRecorder(properties, i)));
                 registry.registerBeanDefinition(CAFE_LOGGER_NAME + (z.getAndIncrement()), builder.getBeanDefinition());
             });
         } catch (Exception e) {
@@ -63,6 +65,14 @@ public class CafeLoggerBeanDefinitionRegistryPostProcessor implements BeanDefini
         }
     }
 
+    private static CafeLoggerLatencyRecorder latencyRecorder(CafeLoggerProperties properties, CafeLoggerPcsProperties point) {
+        CafeLoggerMetricsProperties metrics = properties.getMetrics();
+        if (metrics == null || !metrics.isEnabled()) {
+            return null;
+        }
+        return CafeLoggerLatencyRecorder.of(point.getPointcut(), point.getTopic(), metrics.getInterval());
+    }
+
     @Override
     public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) throws BeansException {
 
@@ -10,6 +10,8 @@ public class CafeLoggerConstants {
     public static final String HTTP_METHOD = "httpMethod";
     public static final String HEADERS = "headers";
     public static final String COST = "cost";
+    public static final String RESULT = "result";
+    public static final String PARAMS = "params";
     public static final String CAFE_FILE_LOGGER_NAME = "CAFE_LOG_FILE";
     public static final String CAFE_LOG_FILE_PATH = "/data/logs/";
     public static final String CAFE_LOG_FILE_NAME = "cafe-log.log";
@@ -23,4 +25,7 @@ public class CafeLoggerConstants {
     public static final String REFLECT_MAPPING_METHOD_VALUE = "value";
     public static final String REFLECT_MAPPING_METHOD_PATH = "path";
     public static final String THREAD_PREFIX = "cafeLogListenerExecutor-";
+    public static final String PIPELINE_THREAD_PREFIX = "cafeLogPipeline-";
+    public static final String SENDER_THREAD_NAME = "cafeLogSender";
+    public static final String DEAD_LETTER_SUFFIX = ".DLT";
 }
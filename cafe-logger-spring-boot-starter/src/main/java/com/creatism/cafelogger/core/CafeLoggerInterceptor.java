@@ -16,18 +16,38 @@ import org.aopalliance.intercept.MethodInvocation;
 public class CafeLoggerInterceptor implements MethodInterceptor {
 
     private final String topic;
+    /**
+     * {@code null} when the latency metrics are disabled
+     */
+    private final CafeLoggerLatencyRecorder latency;
 
     protected CafeLoggerInterceptor(String topic) {
+        this(topic, null);
+    }
+
+    protected CafeLoggerInterceptor(String topic, CafeLoggerLatencyRecorder latency) {
         this.topic = topic;
+        this.latency = latency;
     }
 
     @Override
     public Object invoke(MethodInvocation methodInvocation) throws Throwable {
-        long st = System.currentTimeMillis();
-        // invoking method may throw unhandled exceptions
-        // just throw it out without handle
-        Object res = methodInvocation.proceed();
-        long cost = System.currentTimeMillis() - st;
+        long st = System.nanoTime();
+        Object res;
+        try {
+            // invoking method may throw unhandled exceptions
+            // just throw it out without handle
+            res = methodInvocation.proceed();
+        } catch (Throwable e) {
+            if (latency != null) {
+                latency.record(System.nanoTime() - st);
+            }
+            throw e;
+        }
+        long cost = System.nanoTime() - st;
+        if (latency != null) {
+            latency.record(cost);
+        }
         // 异步发送至kafka
         CafeLoggerKafkaProducer.asyncSend(methodInvocation, res, cost, topic);
 
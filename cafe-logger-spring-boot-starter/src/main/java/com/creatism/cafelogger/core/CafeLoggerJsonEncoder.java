@@ -0,0 +1,79 @@
+package com.creatism.cafelogger.core;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.RawValue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * <p>Encodes a cafe log once, in a single streaming pass, into a buffer reused by the thread. The resulting bytes
+ * are written as is to the cafe log file and sent as is to Kafka.</p>
+ * <p>Nested bodies are serialised in the same pass, payloads which already are JSON are embedded raw with
+ * {@link #raw(ObjectMapper, String)}.</p>
+ * @author pengcheng
+ */
+public final class CafeLoggerJsonEncoder {
+
+    private static final ThreadLocal<ByteArrayBuilder> BUFFERS = ThreadLocal.withInitial(ByteArrayBuilder::new);
+
+    private CafeLoggerJsonEncoder() {
+    }
+
+    /**
+     * @return the UTF-8 JSON of the record
+     */
+    public static byte[] encode(ObjectMapper objectMapper, Object record) {
+        ByteArrayBuilder buffer = BUFFERS.get();
+        try {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(buffer)) {
+                objectMapper.writeValue(generator, record);
+            }
+            return buffer.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            // a failed record must not leak into the next one
+            buffer.reset();
+        }
+    }
+
+    /**
+     * @return the payload embedded as raw JSON if it is a single line JSON object or array, the payload itself
+     * otherwise, a line break would split the record in the cafe log file
+     */
+    public static Object raw(ObjectMapper objectMapper, String payload) {
+        if (payload == null || !looksLikeJson(payload) || payload.indexOf('\n') >= 0 || payload.indexOf('\r') >= 0) {
+            return payload;
+        }
+        // a truncated or malformed payload embedded raw would corrupt the whole record
+        try (JsonParser parser = objectMapper.getFactory().createParser(payload)) {
+            parser.nextToken();
+            parser.skipChildren();
+            return parser.nextToken() == null ? new RawValue(payload.strip()) : payload;
+        } catch (IOException e) {
+            return payload;
+        }
+    }
+
+    private static boolean looksLikeJson(String payload) {
+        int start = 0;
+        int end = payload.length() - 1;
+        while (start <= end && Character.isWhitespace(payload.charAt(start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(payload.charAt(end))) {
+            end--;
+        }
+        if (start >= end) {
+            return false;
+        }
+        char first = payload.charAt(start);
+        char last = payload.charAt(end);
+        return first == '{' && last == '}' || first == '[' && last == ']';
+    }
+}
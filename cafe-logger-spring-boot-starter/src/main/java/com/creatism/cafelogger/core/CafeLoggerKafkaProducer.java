@@ -2,11 +2,13 @@ package com.creatism.cafelogger.core;
 
 import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.LoggerContext;
-import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
 import ch.qos.logback.classic.spi.ILoggingEvent;
 import ch.qos.logback.core.rolling.RollingFileAppender;
 import ch.qos.logback.core.rolling.TimeBasedRollingPolicy;
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.creatism.cafelogger.appender.CafeLoggerJsonLineEncoder;
+import com.creatism.cafelogger.appender.CafeLoggerJsonRecord;
+import com.creatism.cafelogger.properties.CafeLoggerPipelineProperties;
+import com.creatism.cafelogger.properties.CafeLoggerProperties;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.AllArgsConstructor;
 import org.aopalliance.intercept.MethodInvocation;
@@ -14,16 +16,11 @@ import org.slf4j.ILoggerFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.kafka.core.KafkaTemplate;
-import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 import java.net.InetAddress;
 import java.net.UnknownHostException;
-import java.nio.charset.Charset;
-import java.util.Arrays;
-import java.util.LinkedHashMap;
-import java.util.Map;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 
 import static com.creatism.cafelogger.core.CafeLoggerConstants.*;
 
@@ -33,8 +30,8 @@ import static com.creatism.cafelogger.core.CafeLoggerConstants.*;
  */
 public class CafeLoggerKafkaProducer {
 
-    private static KafkaTemplate<String, Object> template;
-    private static ThreadPoolTaskExecutor executor;
+    private static volatile CafeLoggerKafkaSender sender;
+    private static volatile CafeLoggerRingBuffer pipeline;
     private static String appName;
     private static Logger log;
 
@@ -45,19 +42,7 @@ public class CafeLoggerKafkaProducer {
     }
 
     public static void init(KafkaTemplate template, String serviceName) {
-        CafeLoggerKafkaProducer.template = template;
         CafeLoggerKafkaProducer.appName = serviceName;
-        executor = new ThreadPoolTaskExecutor();
-        executor.setCorePoolSize(10);
-        executor.setMaxPoolSize(20);
-        executor.setQueueCapacity(200);
-        executor.setKeepAliveSeconds(30);
-        // 线程池对拒绝任务的处理策略
-        // CallerRunsPolicy：由调用线程（提交任务的线程）处理该任务
-        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
-        executor.initialize();
-
-
         String hostname = UNKNOWN;
         try {
             InetAddress ia = InetAddress.getLocalHost();
@@ -76,25 +61,85 @@ public class CafeLoggerKafkaProducer {
         } else {
             log = null;
         }
+
+        CafeLoggerProperties config = CafeLoggerConfugurationHolder.getConfig();
+        CafeLoggerPipelineProperties pipelineProperties = config != null && config.getPipeline() != null
+                ? config.getPipeline() : new CafeLoggerPipelineProperties();
+        // business threads only publish into the ring buffer, they never serialise, write nor send the logs
+        CafeLoggerRingBuffer previous = pipeline;
+        CafeLoggerKafkaSender previousSender = sender;
+        sender = new CafeLoggerKafkaSender(template,
+                config != null ? config.getLoggerPoints() : Collections.emptyList());
+        pipeline = new CafeLoggerRingBuffer(pipelineProperties);
+        if (previous != null) {
+            previous.close();
+        }
+        if (previousSender != null) {
+            previousSender.close();
+        }
     }
 
 
-    public static void send(String topic, Object message) throws JsonProcessingException {
-        String jsonStr = objectMapper.writeValueAsString(message);
-        log.info(jsonStr);
-        template.send(topic, message);
+    public static void send(String topic, Object message) {
+        send(topic, CafeLoggerJsonEncoder.encode(objectMapper, message));
+    }
+
+    /**
+     * write the encoded record to the cafe log file and send the same bytes to kafka
+     * @param json UTF-8 JSON, see {@link CafeLoggerJsonEncoder}
+     */
+    public static void send(String topic, byte[] json) {
+        // other appenders of the cafe logger print the record as text
+        log.info("{}", new CafeLoggerJsonRecord(json));
+        sender.append(topic, json);
     }
 
     public static void asyncSend(String topic, String message) {
-        executor.execute(() -> {
-            log.info(message);
-            template.send(topic, message);
-        });
+        pipeline.publish(() -> send(topic, message.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * send a record to kafka only, the pipeline consumers hand it over to the sender
+     * @return false when cafe logger is not initialized yet and the record is discarded
+     */
+    public static boolean asyncSendToKafka(String topic, String message) {
+        CafeLoggerRingBuffer current = pipeline;
+        if (current == null || sender == null) {
+            return false;
+        }
+        current.publish(() -> sender.append(topic, message.getBytes(StandardCharsets.UTF_8)));
+        return true;
     }
 
+    /**
+     * @param cost nanoseconds spent in the invocation
+     */
     public static void asyncSend(MethodInvocation methodInvocation,
                           Object result, Long cost, String topic) {
-        executor.execute(new AsyncLogMission(methodInvocation, result, cost, topic));
+        pipeline.publish(new AsyncLogMission(methodInvocation, result, cost, topic));
+    }
+
+    /**
+     * @return method level logs discarded because the pipeline was full, {@code 0} before initialization
+     */
+    public static long droppedCount() {
+        CafeLoggerRingBuffer current = pipeline;
+        return current != null ? current.droppedCount() : 0;
+    }
+
+    /**
+     * drain the pending logs, stop the pipeline consumers and send the pending batches
+     */
+    public static void shutdown() {
+        CafeLoggerRingBuffer current = pipeline;
+        if (current != null) {
+            current.close();
+        }
+        // the pipeline is drained first, its last records still go through the sender
+        CafeLoggerKafkaSender currentSender = sender;
+        if (currentSender != null) {
+            currentSender.close();
+        }
     }
 
     private static ch.qos.logback.classic.Logger initLogback(LoggerContext loggerContext, String pathPrefix) {
@@ -114,9 +159,8 @@ public class CafeLoggerKafkaProducer {
         rollingFileAppender.setRollingPolicy(rollingPolicy);
 
         //内容配置
-        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
-        encoder.setPattern(LOG_MSG_PATTERN);
-        encoder.setCharset(Charset.forName("UTF-8"));
+        // records are logged as their encoded bytes and written as is
+        CafeLoggerJsonLineEncoder encoder = new CafeLoggerJsonLineEncoder();
         encoder.setContext(loggerContext);
         encoder.start();
 
@@ -141,28 +185,8 @@ public class CafeLoggerKafkaProducer {
 
         @Override
         public void run() {
-            Object[] params = methodInvocation.getArguments();
-            Map jsonLog = new LinkedHashMap<>();
-            String resStr = String.valueOf(result);
-            jsonLog.put("result", resStr);
-            StringBuffer paramsSb = new StringBuffer();
-            AtomicInteger pidx = new AtomicInteger(0);
-            Arrays.stream(methodInvocation.getMethod().getParameters()).forEach(p -> {
-                paramsSb.append(p.getName()
-                        + CafeLoggerConstants.COLON
-                        + String.valueOf(params[pidx.getAndIncrement()])
-                        + CafeLoggerConstants.CRLF);
-            });
-            jsonLog.put("params", paramsSb.toString());
-
-            // 本地记录
-            try {
-                String jsonStr = objectMapper.writeValueAsString(jsonLog);
-                log.info(jsonStr);
-            } catch (JsonProcessingException e) {
-                throw new RuntimeException(e);
-            }
-            template.send(topic, jsonLog);
+            send(topic, CafeLoggerMethodRecordEncoder.encode(objectMapper.getFactory(),
+                    methodInvocation.getMethod(), methodInvocation.getArguments(), result, cost));
         }
     }
 }
@@ -0,0 +1,237 @@
+package com.creatism.cafelogger.core;
+
+import com.creatism.cafelogger.properties.CafeLoggerPcsProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.util.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.creatism.cafelogger.core.CafeLoggerConstants.DEAD_LETTER_SUFFIX;
+import static com.creatism.cafelogger.core.CafeLoggerConstants.SENDER_THREAD_NAME;
+
+/**
+ * <p>Sends the cafe logs through producers tuned per logger point: the linger, batch size and compression of a logger
+ * point configure its producer, which packs the records into few requests by itself. Logger points sharing them
+ * share a producer.</p>
+ * <p>Send results are handled asynchronously: a failed record is retried with a linear backoff and then sent to
+ * its dead letter topic. A retried record goes after the records sent meanwhile, retries do not keep the order of
+ * a partition. Set the retries of the logger point to 0 and rely on the idempotent producer retries when the order
+ * matters.</p>
+ * @author pengcheng
+ */
+@Slf4j
+public class CafeLoggerKafkaSender implements AutoCloseable {
+
+    private final KafkaTemplate<String, Object> template;
+    private final Map<String, TopicSettings> topics = new HashMap<>();
+    private final TopicSettings defaults;
+    private final Map<Map<String, Object>, KafkaTemplate<String, Object>> templates = new HashMap<>();
+    private final ScheduledExecutorService scheduler;
+
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder retried = new LongAdder();
+    private final LongAdder deadLettered = new LongAdder();
+    private final LongAdder lost = new LongAdder();
+
+    public CafeLoggerKafkaSender(KafkaTemplate<String, Object> template, List<CafeLoggerPcsProperties> loggerPoints) {
+        this.template = template;
+        this.defaults = settings(new CafeLoggerPcsProperties());
+        for (CafeLoggerPcsProperties point : loggerPoints) {
+            if (point.getTopic() != null && !topics.containsKey(point.getTopic())) {
+                topics.put(point.getTopic(), settings(point));
+            }
+        }
+        // only schedules the retries
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, SENDER_THREAD_NAME);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * hand a record over to the producer of its topic
+     * @param record UTF-8 JSON, sent as is when the producer serialises byte arrays, as a string otherwise
+     */
+    public void append(String topic, byte[] record) {
+        send(topic, topics.getOrDefault(topic, defaults), record, 0);
+    }
+
+    public long sentCount() {
+        return sent.sum();
+    }
+
+    public long retriedCount() {
+        return retried.sum();
+    }
+
+    public long deadLetteredCount() {
+        return deadLettered.sum();
+    }
+
+    /**
+     * @return records failing every retry and their dead letter topic
+     */
+    public long lostCount() {
+        return lost.sum();
+    }
+
+    /**
+     * flush the producers and release the producers created for the logger points
+     */
+    @Override
+    public void close() {
+        scheduler.shutdown();
+        template.flush();
+        for (KafkaTemplate<String, Object> overridden : templates.values()) {
+            if (overridden == template) {
+                continue;
+            }
+            overridden.flush();
+            if (overridden.getProducerFactory() instanceof DisposableBean disposable) {
+                try {
+                    disposable.destroy();
+                } catch (Exception e) {
+                    log.warn("cafe logger producer close failed", e);
+                }
+            }
+        }
+    }
+
+    private void send(String topic, TopicSettings settings, byte[] record, int attempt) {
+        CompletableFuture<?> future;
+        try {
+            future = settings.template.send(topic, settings.partition, null, settings.value(record));
+        } catch (Exception e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        future.whenComplete((result, e) -> {
+            if (e == null) {
+                sent.increment();
+            } else if (attempt < settings.retries && !scheduler.isShutdown()) {
+                retried.increment();
+                scheduler.schedule(() -> send(topic, settings, record, attempt + 1),
+                        settings.retryBackoffMs * (attempt + 1), TimeUnit.MILLISECONDS);
+            } else {
+                deadLetter(topic, settings, record, e);
+            }
+        });
+    }
+
+    private void deadLetter(String topic, TopicSettings settings, byte[] record, Throwable cause) {
+        String deadLetterTopic = settings.deadLetterTopic != null ? settings.deadLetterTopic : topic + DEAD_LETTER_SUFFIX;
+        CompletableFuture<?> future;
+        try {
+            future = settings.template.send(deadLetterTopic, settings.value(record));
+        } catch (Exception e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        future.whenComplete((result, e) -> {
+            if (e == null) {
+                deadLettered.increment();
+            } else {
+                lost.increment();
+                log.error("cafe log lost, sending to {} failed: {}, then to {} failed: {}",
+                        topic, cause.getMessage(), deadLetterTopic, e.getMessage());
+            }
+        });
+    }
+
+    private TopicSettings settings(CafeLoggerPcsProperties point) {
+        Map<String, Object> overrides = new HashMap<>();
+        // the records are already encoded, the producers of the logger points send their bytes
+        overrides.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
+        if (point.getLingerMs() != null) {
+            overrides.put(ProducerConfig.LINGER_MS_CONFIG, point.getLingerMs());
+        }
+        if (point.getBatchSize() != null) {
+            overrides.put(ProducerConfig.BATCH_SIZE_CONFIG, point.getBatchSize());
+        }
+        if (StringUtils.hasText(point.getCompressionType())) {
+            overrides.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, point.getCompressionType());
+        }
+        KafkaTemplate<String, Object> pointTemplate = templates.computeIfAbsent(overrides, this::overriddenTemplate);
+        return new TopicSettings(pointTemplate, pointTemplate != template && serialisesBytes(pointTemplate),
+                partition(point),
+                point.getRetries() != null ? Math.max(0, point.getRetries()) : 0,
+                point.getRetryBackoffMs() != null ? Math.max(0, point.getRetryBackoffMs()) : 0,
+                StringUtils.hasText(point.getDeadLetterTopic()) ? point.getDeadLetterTopic() : null);
+    }
+
+    private static Integer partition(CafeLoggerPcsProperties point) {
+        if (!StringUtils.hasText(point.getPartition())) {
+            return null;
+        }
+        String partition = point.getPartition().trim();
+        try {
+            int value = Integer.parseInt(partition);
+            if (value >= 0) {
+                return value;
+            }
+        } catch (NumberFormatException ignored) {
+            // reported below
+        }
+        throw new IllegalArgumentException("cafe logger point of topic " + point.getTopic() + " has an invalid partition '"
+                + partition + "', expected a non-negative integer");
+    }
+
+    private KafkaTemplate<String, Object> overriddenTemplate(Map<String, Object> overrides) {
+        ProducerFactory<String, Object> factory = template.getProducerFactory();
+        KafkaTemplate<String, Object> overridden;
+        try {
+            overridden = new KafkaTemplate<>(factory, overrides);
+        } catch (UnsupportedOperationException e) {
+            log.warn("cafe logger producer settings ignored, {} can not be reconfigured", factory.getClass().getName());
+            return template;
+        }
+        if (template.getMessageConverter() != null) {
+            overridden.setMessageConverter(template.getMessageConverter());
+        }
+        return overridden;
+    }
+
+    /**
+     * @return whether the producer uses its value.serializer, a serializer instance given to the factory wins over it
+     */
+    private static boolean serialisesBytes(KafkaTemplate<String, Object> template) {
+        return template.getProducerFactory() instanceof DefaultKafkaProducerFactory<String, Object> factory
+                && factory.getValueSerializer() == null;
+    }
+
+    private static final class TopicSettings {
+        private final KafkaTemplate<String, Object> template;
+        private final boolean raw;
+        private final Integer partition;
+        private final int retries;
+        private final long retryBackoffMs;
+        private final String deadLetterTopic;
+
+        private TopicSettings(KafkaTemplate<String, Object> template, boolean raw, Integer partition, int retries,
+                              long retryBackoffMs, String deadLetterTopic) {
+            this.template = template;
+            this.raw = raw;
+            this.partition = partition;
+            this.retries = retries;
+            this.retryBackoffMs = retryBackoffMs;
+            this.deadLetterTopic = deadLetterTopic;
+        }
+
+        private Object value(byte[] record) {
+            return raw ? record : new String(record, StandardCharsets.UTF_8);
+        }
+    }
+}
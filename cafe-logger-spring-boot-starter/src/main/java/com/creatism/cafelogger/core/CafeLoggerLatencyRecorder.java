@@ -0,0 +1,100 @@
+package com.creatism.cafelogger.core;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>Latency of the calls intercepted for a pointcut and topic. Calls are recorded in nanoseconds into an HdrHistogram
+ * {@link Recorder}, which is wait free for the recording threads.</p>
+ * <p>The percentiles and max describe the calls recorded between the two last swaps of the recorder, which is swapped
+ * when they are read once the interval has elapsed. Count and total time are cumulative.</p>
+ * @author pengcheng
+ */
+public class CafeLoggerLatencyRecorder {
+
+    private static final Map<String, CafeLoggerLatencyRecorder> RECORDERS = new ConcurrentHashMap<>();
+    private static final int SIGNIFICANT_DIGITS = 3;
+
+    private final String pointcut;
+    private final String topic;
+    private final long intervalNanos;
+    private final Recorder recorder = new Recorder(SIGNIFICANT_DIGITS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+
+    private Histogram interval;
+    private long intervalStart = System.nanoTime();
+
+    private CafeLoggerLatencyRecorder(String pointcut, String topic, long intervalMillis) {
+        this.pointcut = pointcut;
+        this.topic = topic;
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, intervalMillis));
+    }
+
+    /**
+     * @return the recorder of the pointcut and topic, logger points sharing both share it
+     */
+    public static CafeLoggerLatencyRecorder of(String pointcut, String topic, long intervalMillis) {
+        return RECORDERS.computeIfAbsent(pointcut + CafeLoggerConstants.COMMA + topic,
+                k -> new CafeLoggerLatencyRecorder(pointcut, topic, intervalMillis));
+    }
+
+    public static Collection<CafeLoggerLatencyRecorder> all() {
+        return Collections.unmodifiableCollection(RECORDERS.values());
+    }
+
+    public void record(long nanos) {
+        recorder.recordValue(Math.max(0, nanos));
+        count.increment();
+        totalNanos.add(nanos);
+    }
+
+    public String getPointcut() {
+        return pointcut;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public double totalNanos() {
+        return totalNanos.sum();
+    }
+
+    /**
+     * @return the latency at the percentile over the last interval, in nanoseconds
+     */
+    public synchronized double percentile(double percentile) {
+        Histogram histogram = lastInterval();
+        return histogram.getTotalCount() == 0 ? 0 : histogram.getValueAtPercentile(percentile * 100);
+    }
+
+    /**
+     * @return the highest latency over the last interval, in nanoseconds
+     */
+    public synchronized double max() {
+        Histogram histogram = lastInterval();
+        return histogram.getTotalCount() == 0 ? 0 : histogram.getMaxValue();
+    }
+
+    private Histogram lastInterval() {
+        long now = System.nanoTime();
+        if (interval == null || now - intervalStart >= intervalNanos) {
+            // the previous interval histogram is recycled by the recorder
+            interval = recorder.getIntervalHistogram(interval);
+            intervalStart = now;
+        }
+        return interval;
+    }
+}
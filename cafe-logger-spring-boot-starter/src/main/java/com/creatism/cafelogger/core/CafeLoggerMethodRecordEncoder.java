@@ -0,0 +1,106 @@
+package com.creatism.cafelogger.core;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Parameter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.creatism.cafelogger.core.CafeLoggerConstants.*;
+
+/**
+ * <p>Encodes the method level logs of {@link CafeLoggerInterceptor} straight into buffers owned by the encoding
+ * thread, the pipeline consumers, so a record only allocates the string forms of its values and its bytes.</p>
+ * <p>The record holds the result as a string, the parameters as {@code name:value} lines and the cost of the call
+ * in nanoseconds. Parameter names are resolved once per method.</p>
+ * @author pengcheng
+ */
+final class CafeLoggerMethodRecordEncoder {
+
+    private static final ThreadLocal<CafeLoggerMethodRecordEncoder> ENCODERS =
+            ThreadLocal.withInitial(CafeLoggerMethodRecordEncoder::new);
+    private static final Map<Method, String[]> PARAMETER_NAMES = new ConcurrentHashMap<>();
+    /**
+     * chars kept between records, a larger buffer grown by an unusual record is released
+     */
+    private static final int MAX_RETAINED_CHARS = 16 * 1024;
+
+    private final ByteArrayBuilder buffer = new ByteArrayBuilder();
+    private StringBuilder params = new StringBuilder();
+    private char[] chars = new char[256];
+    private JsonGenerator generator;
+
+    private CafeLoggerMethodRecordEncoder() {
+    }
+
+    /**
+     * @return the UTF-8 JSON of the invocation
+     */
+    static byte[] encode(JsonFactory factory, Method method, Object[] arguments, Object result, Long costNanos) {
+        return ENCODERS.get().write(factory, method, arguments, result, costNanos);
+    }
+
+    private byte[] write(JsonFactory factory, Method method, Object[] arguments, Object result, Long costNanos) {
+        try {
+            if (generator == null) {
+                generator = factory.createGenerator(buffer);
+                // records are taken out one by one, nothing separates them
+                generator.setRootValueSeparator(null);
+            }
+            generator.writeStartObject();
+            generator.writeFieldName(RESULT);
+            generator.writeString(String.valueOf(result));
+            generator.writeFieldName(PARAMS);
+            writeParams(method, arguments);
+            if (costNanos != null) {
+                generator.writeFieldName(COST);
+                generator.writeNumber(costNanos.longValue());
+            }
+            generator.writeEndObject();
+            generator.flush();
+            return buffer.toByteArray();
+        } catch (IOException | RuntimeException e) {
+            // the generator is left in the middle of a record
+            generator = null;
+            if (e instanceof IOException io) {
+                throw new UncheckedIOException(io);
+            }
+            throw (RuntimeException) e;
+        } finally {
+            buffer.reset();
+            if (params.capacity() > MAX_RETAINED_CHARS) {
+                params = new StringBuilder();
+                chars = new char[256];
+            } else {
+                params.setLength(0);
+            }
+        }
+    }
+
+    private void writeParams(Method method, Object[] arguments) throws IOException {
+        String[] names = PARAMETER_NAMES.computeIfAbsent(method, CafeLoggerMethodRecordEncoder::parameterNames);
+        for (int i = 0; i < names.length; i++) {
+            params.append(names[i]).append(COLON).append(i < arguments.length ? arguments[i] : null).append(CRLF);
+        }
+        int length = params.length();
+        if (chars.length < length) {
+            chars = new char[Math.max(length, chars.length * 2)];
+        }
+        params.getChars(0, length, chars, 0);
+        generator.writeString(chars, 0, length);
+    }
+
+    private static String[] parameterNames(Method method) {
+        Parameter[] parameters = method.getParameters();
+        String[] names = new String[parameters.length];
+        for (int i = 0; i < parameters.length; i++) {
+            names[i] = parameters[i].getName();
+        }
+        return names;
+    }
+}
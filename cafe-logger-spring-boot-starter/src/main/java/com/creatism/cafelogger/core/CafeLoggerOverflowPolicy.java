@@ -0,0 +1,25 @@
+package com.creatism.cafelogger.core;
+
+/**
+ * what {@link CafeLoggerRingBuffer} does with a log record published while it is full
+ * @author pengcheng
+ */
+public enum CafeLoggerOverflowPolicy {
+    /**
+     * discard the record being published
+     */
+    DROP_NEWEST,
+    /**
+     * discard the oldest pending record to make room for the new one
+     */
+    DROP_OLDEST,
+    /**
+     * once the buffer passes its high watermark keep only one record out of {@code sampleRate}, discard the new
+     * record when it is full
+     */
+    SAMPLE,
+    /**
+     * wait up to {@code blockTimeout} for room, then discard the record
+     */
+    BLOCK
+}
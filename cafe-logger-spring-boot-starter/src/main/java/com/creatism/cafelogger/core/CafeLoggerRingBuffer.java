@@ -0,0 +1,290 @@
+package com.creatism.cafelogger.core;
+
+import com.creatism.cafelogger.properties.CafeLoggerPipelineProperties;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.creatism.cafelogger.core.CafeLoggerConstants.PIPELINE_THREAD_PREFIX;
+
+/**
+ * <p>Bounded lock free ring buffer between the business threads and a few dedicated consumer threads.</p>
+ * <p>Every slot carries a sequence telling whether it may be written or read for a given lap, so producers and
+ * consumers only claim positions with a CAS and never lock. Publishing never runs the task on the calling thread,
+ * a full buffer is handled by the {@link CafeLoggerOverflowPolicy} and counted in {@link #droppedCount()}.</p>
+ * <p>Idle consumers spin briefly, then sleep until a producer signals a new record.</p>
+ * @author pengcheng
+ */
+@Slf4j
+public class CafeLoggerRingBuffer implements AutoCloseable {
+
+    private static final int SPINS_BEFORE_PARK = 64;
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final int DROP_OLDEST_ATTEMPTS = 4;
+    /**
+     * a sleeping consumer is woken by the producers, it only checks the buffer on its own as a safety net
+     */
+    private static final long IDLE_PARK_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final AtomicReferenceArray<Runnable> slots;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+
+    private final CafeLoggerOverflowPolicy overflowPolicy;
+    private final long blockTimeoutNanos;
+    private final int sampleRate;
+    private final int highWatermark;
+    private final long shutdownTimeout;
+    private final AtomicLong sampleCounter = new AtomicLong();
+
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    private final Thread[] consumers;
+    /**
+     * 1 while the consumer of the same index sleeps
+     */
+    private final AtomicIntegerArray sleeping;
+    private final AtomicInteger sleepers = new AtomicInteger();
+    private volatile boolean running = true;
+
+    public CafeLoggerRingBuffer(CafeLoggerPipelineProperties properties) {
+        int capacity = Integer.highestOneBit(Math.max(2, properties.getCapacity()) * 2 - 1);
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+        this.mask = capacity - 1;
+        this.overflowPolicy = properties.getOverflowPolicy() != null
+                ? properties.getOverflowPolicy() : CafeLoggerOverflowPolicy.DROP_NEWEST;
+        this.blockTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, properties.getBlockTimeout()));
+        this.sampleRate = Math.max(1, properties.getSampleRate());
+        this.highWatermark = capacity - capacity / 4;
+        this.shutdownTimeout = Math.max(0, properties.getShutdownTimeout());
+
+        this.consumers = new Thread[Math.max(1, properties.getConsumers())];
+        this.sleeping = new AtomicIntegerArray(consumers.length);
+        for (int i = 0; i < consumers.length; i++) {
+            int index = i;
+            Thread consumer = new Thread(() -> consume(index), PIPELINE_THREAD_PREFIX + (i + 1));
+            consumer.setDaemon(true);
+            consumers[i] = consumer;
+            consumer.start();
+        }
+    }
+
+    /**
+     * hand a task over to the consumer threads, never blocking longer than the configured block timeout
+     * @return whether the task was accepted
+     */
+    public boolean publish(Runnable task) {
+        if (!running) {
+            dropped.increment();
+            return false;
+        }
+        boolean accepted;
+        switch (overflowPolicy) {
+            case DROP_OLDEST:
+                accepted = offerDroppingOldest(task);
+                break;
+            case SAMPLE:
+                accepted = offerSampled(task);
+                break;
+            case BLOCK:
+                accepted = offerBlocking(task);
+                break;
+            default:
+                accepted = offer(task);
+        }
+        if (accepted) {
+            signal();
+        } else {
+            dropped.increment();
+        }
+        return accepted;
+    }
+
+    /**
+     * @return records discarded because the buffer was full or closed
+     */
+    public long droppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * @return records whose task threw
+     */
+    public long failedCount() {
+        return failed.sum();
+    }
+
+    public int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, slots.length()));
+    }
+
+    public int capacity() {
+        return slots.length();
+    }
+
+    /**
+     * stop accepting records and give the consumers the shutdown timeout to drain the pending ones
+     */
+    @Override
+    public void close() {
+        running = false;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(shutdownTimeout);
+        for (Thread consumer : consumers) {
+            LockSupport.unpark(consumer);
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            try {
+                consumer.join(Math.max(1, remaining));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        int pending = size();
+        if (pending > 0) {
+            log.warn("cafe logger pipeline closed with {} pending records", pending);
+        }
+    }
+
+    private boolean offerDroppingOldest(Runnable task) {
+        for (int attempt = 0; attempt < DROP_OLDEST_ATTEMPTS; attempt++) {
+            if (offer(task)) {
+                return true;
+            }
+            if (poll() != null) {
+                dropped.increment();
+            }
+        }
+        return offer(task);
+    }
+
+    private boolean offerSampled(Runnable task) {
+        if (size() >= highWatermark && sampleCounter.incrementAndGet() % sampleRate != 0) {
+            return false;
+        }
+        return offer(task);
+    }
+
+    private boolean offerBlocking(Runnable task) {
+        if (offer(task)) {
+            return true;
+        }
+        long deadline = System.nanoTime() + blockTimeoutNanos;
+        long parkNanos = 1000;
+        while (running && System.nanoTime() - deadline < 0) {
+            LockSupport.parkNanos(parkNanos);
+            if (offer(task)) {
+                return true;
+            }
+            parkNanos = Math.min(parkNanos * 2, MAX_PARK_NANOS);
+        }
+        return false;
+    }
+
+    private boolean offer(Runnable task) {
+        long position = tail.get();
+        while (true) {
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    slots.lazySet(index, task);
+                    // publishes the slot to the consumer reading this sequence
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                // the slot still holds the record of the previous lap
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    private Runnable poll() {
+        long position = head.get();
+        while (true) {
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    Runnable task = slots.get(index);
+                    slots.lazySet(index, null);
+                    // frees the slot for the producer of the next lap
+                    sequences.set(index, position + mask + 1);
+                    return task;
+                }
+                position = head.get();
+            } else if (difference < 0) {
+                return null;
+            } else {
+                position = head.get();
+            }
+        }
+    }
+
+    /**
+     * wakes a sleeping consumer, the record is published before the sleepers are read
+     */
+    private void signal() {
+        if (sleepers.get() == 0) {
+            return;
+        }
+        for (int i = 0; i < consumers.length; i++) {
+            if (sleeping.get(i) == 1 && sleeping.compareAndSet(i, 1, 0)) {
+                sleepers.decrementAndGet();
+                LockSupport.unpark(consumers[i]);
+                return;
+            }
+        }
+    }
+
+    private void consume(int index) {
+        int idle = 0;
+        while (true) {
+            Runnable task = poll();
+            if (task != null) {
+                idle = 0;
+                try {
+                    task.run();
+                } catch (Throwable e) {
+                    failed.increment();
+                    log.error("cafe logger pipeline task failed", e);
+                }
+                continue;
+            }
+            if (!running) {
+                return;
+            }
+            if (++idle < SPINS_BEFORE_PARK) {
+                Thread.onSpinWait();
+                continue;
+            }
+            sleeping.set(index, 1);
+            sleepers.incrementAndGet();
+            // a record published before the consumer was seen sleeping is picked up without waiting for a signal
+            if (size() == 0 && running) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+            if (sleeping.compareAndSet(index, 1, 0)) {
+                sleepers.decrementAndGet();
+            }
+        }
+    }
+}
@@ -1,8 +1,8 @@
 package com.creatism.cafelogger.feign;
 
+import com.creatism.cafelogger.core.CafeLoggerJsonEncoder;
 import com.creatism.cafelogger.core.CafeLoggerKafkaProducer;
 import com.creatism.cafelogger.request.CafeLoggerRequestLog;
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.event.EventListener;
@@ -19,15 +19,15 @@ public class CafeLoggerFeignLoggerListener {
 
     @Async("cafeLoggerEventThreadPool")
     @EventListener(CafeLoggerFeignLoggerEvent.class)
-    public void handleCafeLoggerFeignLoggerEvent(CafeLoggerFeignLoggerEvent event) throws JsonProcessingException {
+    public void handleCafeLoggerFeignLoggerEvent(CafeLoggerFeignLoggerEvent event) {
         CafeLoggerRequestLog logInfo = CafeLoggerRequestLog.builder()
                 .uri(event.getUri())
                 .method(event.getMethod())
                 .headers(String.valueOf(event.getHeaders()))
                 .contentType(event.getContentType())
-                .body(event.getBody())
-                .response(event.getResponse())
+                .body(CafeLoggerJsonEncoder.raw(objectMapper, event.getBody()))
+                .response(CafeLoggerJsonEncoder.raw(objectMapper, event.getResponse()))
                 .build();
-        CafeLoggerKafkaProducer.send(event.getTopic(), objectMapper.writeValueAsString(logInfo));
+        CafeLoggerKafkaProducer.send(event.getTopic(), CafeLoggerJsonEncoder.encode(objectMapper, logInfo));
     }
 }
@@ -0,0 +1,51 @@
+package com.creatism.cafelogger.metrics;
+
+import com.creatism.cafelogger.core.CafeLoggerLatencyRecorder;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * exports the latency of every pointcut as a timer, with its percentiles and max as gauges, tagged with the pointcut
+ * and topic
+ * @author pengcheng
+ */
+public class CafeLoggerLatencyMetrics implements MeterBinder {
+
+    public static final String METHOD_TIMER = "cafe.logger.method";
+    public static final String TAG_POINTCUT = "pointcut";
+    public static final String TAG_TOPIC = "topic";
+    public static final String TAG_PERCENTILE = "phi";
+
+    private final List<Double> percentiles;
+
+    public CafeLoggerLatencyMetrics(List<Double> percentiles) {
+        this.percentiles = percentiles;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (CafeLoggerLatencyRecorder recorder : CafeLoggerLatencyRecorder.all()) {
+            Tags tags = Tags.of(TAG_POINTCUT, recorder.getPointcut(), TAG_TOPIC, String.valueOf(recorder.getTopic()));
+            FunctionTimer.builder(METHOD_TIMER, recorder, CafeLoggerLatencyRecorder::count,
+                            CafeLoggerLatencyRecorder::totalNanos, TimeUnit.NANOSECONDS)
+                    .tags(tags)
+                    .description("latency of the calls intercepted by cafe logger")
+                    .register(registry);
+            TimeGauge.builder(METHOD_TIMER + ".max", recorder, TimeUnit.NANOSECONDS, CafeLoggerLatencyRecorder::max)
+                    .tags(tags)
+                    .register(registry);
+            for (Double percentile : percentiles) {
+                TimeGauge.builder(METHOD_TIMER + ".percentile", recorder, TimeUnit.NANOSECONDS,
+                                r -> r.percentile(percentile))
+                        .tags(tags.and(TAG_PERCENTILE, String.valueOf(percentile)))
+                        .register(registry);
+            }
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.creatism.cafelogger.properties;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * latency histograms of the pointcuts
+ * @author pengcheng
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class CafeLoggerMetricsProperties {
+    /**
+     * record the latency of every intercepted call
+     */
+    private boolean enabled = true;
+    /**
+     * milliseconds covered by the exported percentiles and max
+     */
+    private long interval = 60000;
+    /**
+     * percentiles exported as gauges
+     */
+    private List<Double> percentiles = List.of(0.5, 0.9, 0.99, 0.999);
+}
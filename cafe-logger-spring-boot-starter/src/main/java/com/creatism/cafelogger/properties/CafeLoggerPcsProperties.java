@@ -18,7 +18,7 @@ public class CafeLoggerPcsProperties {
      */
     private String topic;
     /**
-     * partition
+     * partition, a non-negative integer. The producer partitioner chooses when empty
      */
     private String partition;
     /**
@@ -33,4 +33,28 @@ public class CafeLoggerPcsProperties {
      * uri
      */
     private String feignUri;
+    /**
+     * producer linger.ms, milliseconds a batch of the producer waits for more records
+     */
+    private Long lingerMs = 5L;
+    /**
+     * producer batch.size, bytes of a batch of the producer
+     */
+    private Integer batchSize = 65536;
+    /**
+     * producer compression.type (none, gzip, snappy, lz4, zstd), the producer one when empty
+     */
+    private String compressionType;
+    /**
+     * sends retried before dead lettering a record
+     */
+    private Integer retries = 3;
+    /**
+     * milliseconds before the first retry, growing linearly
+     */
+    private Long retryBackoffMs = 200L;
+    /**
+     * topic receiving the records failing every retry, the topic suffixed with .DLT when empty
+     */
+    private String deadLetterTopic;
 }
@@ -0,0 +1,40 @@
+package com.creatism.cafelogger.properties;
+
+import com.creatism.cafelogger.core.CafeLoggerOverflowPolicy;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * ring buffer between the business threads and the cafe log consumers
+ * @author pengcheng
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class CafeLoggerPipelineProperties {
+    /**
+     * pending records, rounded up to a power of two
+     */
+    private int capacity = 8192;
+    /**
+     * dedicated threads serialising, writing and sending the records
+     */
+    private int consumers = 2;
+    /**
+     * what to do with a record published while the buffer is full
+     */
+    private CafeLoggerOverflowPolicy overflowPolicy = CafeLoggerOverflowPolicy.DROP_NEWEST;
+    /**
+     * milliseconds a business thread may wait for room with {@link CafeLoggerOverflowPolicy#BLOCK}
+     */
+    private long blockTimeout = 5;
+    /**
+     * one record kept out of sampleRate past the high watermark with {@link CafeLoggerOverflowPolicy#SAMPLE}
+     */
+    private int sampleRate = 10;
+    /**
+     * milliseconds given to the consumers to drain the buffer on shutdown
+     */
+    private long shutdownTimeout = 3000;
+}
@@ -16,4 +16,12 @@ public class CafeLoggerProperties {
      * plan to use it configure log path
      */
     String logPath;
+    /**
+     * asynchronous pipeline of the method level logs
+     */
+    CafeLoggerPipelineProperties pipeline = new CafeLoggerPipelineProperties();
+    /**
+     * latency histograms of the pointcuts
+     */
+    CafeLoggerMetricsProperties metrics = new CafeLoggerMetricsProperties();
 }
@@ -4,6 +4,8 @@ import lombok.Builder;
 import lombok.Data;
 
 /**
+ * body and response are serialised in the same pass as the log, a payload which is already JSON is given as a
+ * {@link com.fasterxml.jackson.databind.util.RawValue}
  * @author xuyu
  */
 @Data
@@ -13,6 +15,6 @@ public class CafeLoggerRequestLog {
     private String uri;
     private String headers;
     private String contentType;
-    private String body;
-    private String response;
+    private Object body;
+    private Object response;
 }
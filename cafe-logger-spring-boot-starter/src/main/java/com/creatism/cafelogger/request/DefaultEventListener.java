@@ -1,8 +1,8 @@
 package com.creatism.cafelogger.request;
 
+import com.creatism.cafelogger.core.CafeLoggerJsonEncoder;
 import com.creatism.cafelogger.core.CafeLoggerKafkaProducer;
 import com.creatism.cafelogger.core.ParameterBinding;
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -24,30 +24,29 @@ public class DefaultEventListener {
 
     @Async("cafeLoggerEventThreadPool")
     @EventListener(CafeLoggerRequestEvent.class)
-    public void handleCafeLoggerRequestEvent(CafeLoggerRequestEvent event) throws JsonProcessingException {
+    public void handleCafeLoggerRequestEvent(CafeLoggerRequestEvent event) {
         ParameterBinding[] bindings = event.getParameterBindings();
         ParameterBinding binding;
         Parameter parameter;
         Object value;
-        String body = null, response = null;
+        Object body = null;
         for (int i = 0; i < bindings.length; i++) {
             binding = bindings[i];
             parameter = binding.getParameter();
             value = binding.getValue();
             if(parameter.getAnnotation(RequestBody.class) != null) {
-                // deal as json
-                body = objectMapper.writeValueAsString(value);
+                // deal as json, serialised with the log
+                body = value;
             }
         }
-        response = objectMapper.writeValueAsString(event.getResponse());
         CafeLoggerRequestLog logInfo = CafeLoggerRequestLog.builder()
                 .uri(event.getUri())
                 .method(event.getMethod())
                 .headers(String.valueOf(event.getHeaders()))
                 .contentType(event.getContentType())
                 .body(body)
-                .response(response)
+                .response(event.getResponse())
                 .build();
-        CafeLoggerKafkaProducer.send(event.getTopic(), objectMapper.writeValueAsString(logInfo));
+        CafeLoggerKafkaProducer.send(event.getTopic(), CafeLoggerJsonEncoder.encode(objectMapper, logInfo));
     }
 }
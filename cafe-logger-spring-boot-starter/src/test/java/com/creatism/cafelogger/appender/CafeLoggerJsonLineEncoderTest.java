@@ -0,0 +1,41 @@
+package com.creatism.cafelogger.appender;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import junit.framework.TestCase;
+
+import java.nio.charset.StandardCharsets;
+
+public class CafeLoggerJsonLineEncoderTest extends TestCase {
+
+    private final LoggerContext context = new LoggerContext();
+
+    public void testRecordBytesAreWrittenAsIs() {
+        byte[] json = "{\"a\":\"é\"}".getBytes(StandardCharsets.UTF_8);
+        LoggingEvent event = event(new CafeLoggerJsonRecord(json));
+
+        String line = new String(new CafeLoggerJsonLineEncoder().encode(event), StandardCharsets.UTF_8);
+
+        assertEquals("{\"a\":\"é\"}" + System.lineSeparator(), line);
+    }
+
+    public void testOtherAppendersFormatTheRecordAsText() {
+        LoggingEvent event = event(new CafeLoggerJsonRecord("{\"a\":1}".getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals("{\"a\":1}", event.getFormattedMessage());
+    }
+
+    public void testOtherMessagesAreFormatted() {
+        LoggingEvent event = event("text");
+
+        String line = new String(new CafeLoggerJsonLineEncoder().encode(event), StandardCharsets.UTF_8);
+
+        assertEquals("text" + System.lineSeparator(), line);
+    }
+
+    private LoggingEvent event(Object argument) {
+        return new LoggingEvent(getClass().getName(), context.getLogger("cafe"), Level.INFO, "{}", null,
+                new Object[]{argument});
+    }
+}
@@ -0,0 +1,111 @@
+package com.creatism.cafelogger.core;
+
+import com.creatism.cafelogger.properties.CafeLoggerPcsProperties;
+import junit.framework.TestCase;
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.errors.TimeoutException;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+
+public class CafeLoggerKafkaSenderTest extends TestCase {
+
+    private final MockProducer<String, Object> producer = new MockProducer<>(true, new StringSerializer(),
+            (topic, value) -> String.valueOf(value).getBytes(StandardCharsets.UTF_8)) {
+        @Override
+        public synchronized Future<RecordMetadata> send(ProducerRecord<String, Object> record, Callback callback) {
+            if ("failing".equals(record.topic())) {
+                TimeoutException failure = new TimeoutException("broker down");
+                callback.onCompletion(null, failure);
+                return CompletableFuture.failedFuture(failure);
+            }
+            return super.send(record, callback);
+        }
+
+        @Override
+        public void close(Duration timeout) {
+            // shared like the producer of a DefaultKafkaProducerFactory, the template closes it after every send
+        }
+    };
+
+    public void testRecordsAreHandedOverRightAway() {
+        CafeLoggerKafkaSender sender = new CafeLoggerKafkaSender(template(), List.of(point("logs", "2", 0)));
+        try {
+            sender.append("logs", bytes("{\"a\":1}"));
+            sender.append("other", bytes("{\"b\":2}"));
+
+            List<ProducerRecord<String, Object>> sent = producer.history();
+            assertEquals(2, sent.size());
+            assertEquals(Integer.valueOf(2), sent.get(0).partition());
+            assertEquals("{\"a\":1}", sent.get(0).value());
+            assertNull(sent.get(1).partition());
+            assertEquals(2, sender.sentCount());
+        } finally {
+            sender.close();
+        }
+    }
+
+    public void testFailedRecordsAreRetriedThenDeadLettered() throws Exception {
+        CafeLoggerKafkaSender sender = new CafeLoggerKafkaSender(template(), List.of(point("failing", null, 2)));
+        try {
+            sender.append("failing", bytes("{\"a\":1}"));
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (sender.deadLetteredCount() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals(2, sender.retriedCount());
+            assertEquals(1, sender.deadLetteredCount());
+            assertEquals(0, sender.sentCount());
+            ProducerRecord<String, Object> deadLetter = producer.history().get(0);
+            assertEquals("failing" + CafeLoggerConstants.DEAD_LETTER_SUFFIX, deadLetter.topic());
+            assertEquals("{\"a\":1}", deadLetter.value());
+        } finally {
+            sender.close();
+        }
+    }
+
+    public void testInvalidPartitionIsReported() {
+        for (String partition : new String[]{"first", "-1"}) {
+            try {
+                new CafeLoggerKafkaSender(template(), List.of(point("logs", partition, 0))).close();
+                fail(partition);
+            } catch (IllegalArgumentException expected) {
+                assertTrue(expected.getMessage(), expected.getMessage().contains("logs"));
+                assertTrue(expected.getMessage(), expected.getMessage().contains(partition));
+            }
+        }
+    }
+
+    private KafkaTemplate<String, Object> template() {
+        return new KafkaTemplate<>(new ProducerFactory<String, Object>() {
+            @Override
+            public Producer<String, Object> createProducer() {
+                return producer;
+            }
+        });
+    }
+
+    private static CafeLoggerPcsProperties point(String topic, String partition, int retries) {
+        CafeLoggerPcsProperties point = new CafeLoggerPcsProperties();
+        point.setTopic(topic);
+        point.setPartition(partition);
+        point.setRetries(retries);
+        point.setRetryBackoffMs(1L);
+        return point;
+    }
+
+    private static byte[] bytes(String json) {
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+}
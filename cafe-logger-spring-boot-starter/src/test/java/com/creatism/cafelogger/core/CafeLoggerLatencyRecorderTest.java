@@ -0,0 +1,51 @@
+package com.creatism.cafelogger.core;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.TimeUnit;
+
+public class CafeLoggerLatencyRecorderTest extends TestCase {
+
+    public void testRecordersAreSharedByPointcutAndTopic() {
+        CafeLoggerLatencyRecorder recorder = CafeLoggerLatencyRecorder.of("execution(* shared(..))", "logs", 1000);
+
+        assertSame(recorder, CafeLoggerLatencyRecorder.of("execution(* shared(..))", "logs", 5000));
+        assertNotSame(recorder, CafeLoggerLatencyRecorder.of("execution(* shared(..))", "other", 1000));
+        assertTrue(CafeLoggerLatencyRecorder.all().contains(recorder));
+        assertEquals("execution(* shared(..))", recorder.getPointcut());
+        assertEquals("logs", recorder.getTopic());
+    }
+
+    public void testPercentilesDescribeTheLastInterval() throws Exception {
+        CafeLoggerLatencyRecorder recorder = CafeLoggerLatencyRecorder.of("execution(* interval(..))", "logs", 50);
+        assertEquals(0.0, recorder.percentile(0.5));
+        assertEquals(0.0, recorder.max());
+
+        for (int i = 1; i <= 100; i++) {
+            recorder.record(TimeUnit.MICROSECONDS.toNanos(i));
+        }
+        Thread.sleep(60);
+        assertEquals(50_000, recorder.percentile(0.5), 50);
+        assertEquals(100_000, recorder.max(), 100);
+
+        for (int i = 0; i < 7; i++) {
+            recorder.record(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        Thread.sleep(60);
+        assertEquals(1_000_000, recorder.percentile(0.5), 1000);
+        assertEquals(1_000_000, recorder.max(), 1000);
+
+        assertEquals(107, recorder.count());
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(5050) + TimeUnit.MILLISECONDS.toNanos(7), recorder.totalNanos(), 0);
+    }
+
+    public void testIntervalIsKeptUntilItElapses() {
+        CafeLoggerLatencyRecorder recorder = CafeLoggerLatencyRecorder.of("execution(* kept(..))", "logs", 60_000);
+        recorder.record(1000);
+        assertEquals(1000, recorder.max(), 1);
+
+        recorder.record(2_000_000);
+        assertEquals(1000, recorder.max(), 1);
+        assertEquals(2, recorder.count());
+    }
+}
@@ -0,0 +1,87 @@
+package com.creatism.cafelogger.core;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Parameter;
+
+public class CafeLoggerMethodRecordEncoderTest extends TestCase {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public void testRecordHoldsResultParamsAndCost() throws Exception {
+        Method method = Service.class.getMethod("order", String.class, int.class);
+
+        JsonNode record = encode(method, new Object[]{"o-1", 3}, "accepted", 1500L);
+
+        assertEquals("accepted", record.get(CafeLoggerConstants.RESULT).asText());
+        assertEquals(params(method, "o-1", 3), record.get(CafeLoggerConstants.PARAMS).asText());
+        assertEquals(1500L, record.get(CafeLoggerConstants.COST).asLong());
+        assertEquals(3, record.size());
+    }
+
+    public void testMissingValues() throws Exception {
+        Method method = Service.class.getMethod("order", String.class, int.class);
+
+        JsonNode record = encode(method, new Object[]{null}, null, null);
+
+        assertEquals("null", record.get(CafeLoggerConstants.RESULT).asText());
+        assertEquals(params(method, null, null), record.get(CafeLoggerConstants.PARAMS).asText());
+        assertFalse(record.has(CafeLoggerConstants.COST));
+    }
+
+    public void testRecordsAreIndependent() throws Exception {
+        Method method = Service.class.getMethod("order", String.class, int.class);
+        String large = "x".repeat(40 * 1024);
+
+        // a record larger than the retained buffers, then records escaping characters
+        assertEquals(params(method, large, 1), encode(method, new Object[]{large, 1}, "r", 1L)
+                .get(CafeLoggerConstants.PARAMS).asText());
+        for (int i = 0; i < 3; i++) {
+            String value = "\"quoted\"\n" + i;
+            JsonNode record = encode(method, new Object[]{value, i}, value, (long) i);
+            assertEquals(value, record.get(CafeLoggerConstants.RESULT).asText());
+            assertEquals(params(method, value, i), record.get(CafeLoggerConstants.PARAMS).asText());
+        }
+    }
+
+    public void testFailedRecordDoesNotCorruptTheNextOne() throws Exception {
+        Method method = Service.class.getMethod("order", String.class, int.class);
+        Object failing = new Object() {
+            @Override
+            public String toString() {
+                throw new IllegalStateException("expected");
+            }
+        };
+
+        try {
+            CafeLoggerMethodRecordEncoder.encode(objectMapper.getFactory(), method, new Object[]{"o-1", 1}, failing, 1L);
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        JsonNode record = encode(method, new Object[]{"o-2", 2}, "ok", 2L);
+        assertEquals("ok", record.get(CafeLoggerConstants.RESULT).asText());
+        assertEquals(params(method, "o-2", 2), record.get(CafeLoggerConstants.PARAMS).asText());
+    }
+
+    private JsonNode encode(Method method, Object[] arguments, Object result, Long cost) throws IOException {
+        byte[] bytes = CafeLoggerMethodRecordEncoder.encode(objectMapper.getFactory(), method, arguments, result, cost);
+        return objectMapper.readTree(bytes);
+    }
+
+    private static String params(Method method, Object... values) {
+        Parameter[] parameters = method.getParameters();
+        StringBuilder params = new StringBuilder();
+        for (int i = 0; i < parameters.length; i++) {
+            params.append(parameters[i].getName()).append(CafeLoggerConstants.COLON).append(values[i]).append(CafeLoggerConstants.CRLF);
+        }
+        return params.toString();
+    }
+
+    public interface Service {
+        String order(String id, int quantity);
+    }
+}
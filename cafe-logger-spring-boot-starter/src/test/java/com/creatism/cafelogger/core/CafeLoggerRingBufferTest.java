@@ -0,0 +1,212 @@
+package com.creatism.cafelogger.core;
+
+import com.creatism.cafelogger.properties.CafeLoggerPipelineProperties;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CafeLoggerRingBufferTest extends TestCase {
+
+    private static final int CAPACITY = 8;
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final List<Integer> ran = new CopyOnWriteArrayList<>();
+
+    public void testCapacityIsRoundedUpToAPowerOfTwo() {
+        CafeLoggerRingBuffer buffer = new CafeLoggerRingBuffer(properties(CafeLoggerOverflowPolicy.DROP_NEWEST, 5));
+        try {
+            assertEquals(8, buffer.capacity());
+        } finally {
+            buffer.close();
+        }
+    }
+
+    public void testRecordsRunInPublishingOrder() throws Exception {
+        CafeLoggerRingBuffer buffer = new CafeLoggerRingBuffer(properties(CafeLoggerOverflowPolicy.BLOCK, 1024));
+        CountDownLatch done = new CountDownLatch(10000);
+        AtomicInteger expected = new AtomicInteger();
+        AtomicInteger outOfOrder = new AtomicInteger();
+        try {
+            for (int i = 0; i < 10000; i++) {
+                int record = i;
+                while (!buffer.publish(() -> {
+                    if (expected.getAndIncrement() != record) {
+                        outOfOrder.incrementAndGet();
+                    }
+                    done.countDown();
+                })) {
+                    Thread.onSpinWait();
+                }
+            }
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertEquals(0, outOfOrder.get());
+        } finally {
+            buffer.close();
+        }
+    }
+
+    public void testSleepingConsumerIsWokenByPublish() throws Exception {
+        CafeLoggerRingBuffer buffer = new CafeLoggerRingBuffer(properties(CafeLoggerOverflowPolicy.DROP_NEWEST, CAPACITY));
+        try {
+            for (int i = 0; i < 3; i++) {
+                // long enough for the consumer to be asleep, far shorter than its safety wake up
+                Thread.sleep(100);
+                CountDownLatch done = new CountDownLatch(1);
+                long start = System.nanoTime();
+                assertTrue(buffer.publish(done::countDown));
+                assertTrue(done.await(5, TimeUnit.SECONDS));
+                assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(200));
+            }
+        } finally {
+            buffer.close();
+        }
+    }
+
+    public void testDropNewest() throws Exception {
+        CafeLoggerRingBuffer buffer = stalled(CafeLoggerOverflowPolicy.DROP_NEWEST);
+        try {
+            fill(buffer);
+            assertFalse(buffer.publish(record(CAPACITY)));
+            assertEquals(1, buffer.droppedCount());
+
+            release.countDown();
+            buffer.close();
+            assertEquals(records(0, CAPACITY), ran);
+        } finally {
+            release.countDown();
+            buffer.close();
+        }
+    }
+
+    public void testDropOldest() throws Exception {
+        CafeLoggerRingBuffer buffer = stalled(CafeLoggerOverflowPolicy.DROP_OLDEST);
+        try {
+            fill(buffer);
+            assertTrue(buffer.publish(record(CAPACITY)));
+            assertEquals(1, buffer.droppedCount());
+
+            release.countDown();
+            buffer.close();
+            assertEquals(records(1, CAPACITY + 1), ran);
+        } finally {
+            release.countDown();
+            buffer.close();
+        }
+    }
+
+    public void testSampleAboveTheHighWatermark() throws Exception {
+        CafeLoggerRingBuffer buffer = stalled(CafeLoggerOverflowPolicy.SAMPLE);
+        try {
+            // the high watermark is three quarters of the capacity
+            for (int i = 0; i < 6; i++) {
+                assertTrue(buffer.publish(record(i)));
+            }
+            int accepted = 0;
+            for (int i = 6; i < 6 + 2 * 3; i++) {
+                if (buffer.publish(record(i))) {
+                    accepted++;
+                }
+            }
+            assertEquals(2, accepted);
+            assertEquals(4, buffer.droppedCount());
+        } finally {
+            release.countDown();
+            buffer.close();
+        }
+    }
+
+    public void testBlockWaitsForRoom() throws Exception {
+        CafeLoggerRingBuffer buffer = stalled(CafeLoggerOverflowPolicy.BLOCK);
+        try {
+            fill(buffer);
+            long start = System.nanoTime();
+            assertFalse(buffer.publish(record(CAPACITY)));
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(200));
+
+            new Thread(() -> {
+                sleep(20);
+                release.countDown();
+            }).start();
+            assertTrue(buffer.publish(record(CAPACITY + 1)));
+            assertEquals(1, buffer.droppedCount());
+        } finally {
+            release.countDown();
+            buffer.close();
+        }
+    }
+
+    public void testFailedTasksAreCountedAndClosedBufferRejects() {
+        CafeLoggerRingBuffer buffer = new CafeLoggerRingBuffer(properties(CafeLoggerOverflowPolicy.DROP_NEWEST, CAPACITY));
+        buffer.publish(() -> {
+            throw new IllegalStateException("expected");
+        });
+        buffer.close();
+
+        assertEquals(1, buffer.failedCount());
+        assertFalse(buffer.publish(record(0)));
+        assertEquals(1, buffer.droppedCount());
+    }
+
+    /**
+     * @return a buffer whose only consumer waits for {@link #release}
+     */
+    private CafeLoggerRingBuffer stalled(CafeLoggerOverflowPolicy policy) {
+        CafeLoggerRingBuffer buffer = new CafeLoggerRingBuffer(properties(policy, CAPACITY));
+        buffer.publish(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        long deadline = System.currentTimeMillis() + 5000;
+        while (buffer.size() > 0 && System.currentTimeMillis() < deadline) {
+            sleep(1);
+        }
+        assertEquals(0, buffer.size());
+        return buffer;
+    }
+
+    private void fill(CafeLoggerRingBuffer buffer) {
+        for (int i = 0; i < CAPACITY; i++) {
+            assertTrue(buffer.publish(record(i)));
+        }
+        assertEquals(CAPACITY, buffer.size());
+    }
+
+    private Runnable record(int record) {
+        return () -> ran.add(record);
+    }
+
+    private static List<Integer> records(int from, int to) {
+        List<Integer> records = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            records.add(i);
+        }
+        return records;
+    }
+
+    private static CafeLoggerPipelineProperties properties(CafeLoggerOverflowPolicy policy, int capacity) {
+        CafeLoggerPipelineProperties properties = new CafeLoggerPipelineProperties();
+        properties.setCapacity(capacity);
+        properties.setConsumers(1);
+        properties.setOverflowPolicy(policy);
+        properties.setBlockTimeout(200);
+        properties.setSampleRate(3);
+        properties.setShutdownTimeout(1000);
+        return properties;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
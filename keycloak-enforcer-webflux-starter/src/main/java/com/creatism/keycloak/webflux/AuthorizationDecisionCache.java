@@ -0,0 +1,80 @@
+package com.creatism.keycloak.webflux;
+
+import com.creatism.keycloak.webflux.client.util.SegmentedLruCache;
+import org.keycloak.common.util.Time;
+import org.keycloak.representations.AccessToken;
+import org.keycloak.representations.adapters.config.PolicyEnforcerConfig.PathConfig;
+import org.springframework.http.HttpMethod;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Remembers granted authorization decisions, so a burst of requests carrying the same token neither
+ * re-evaluates the permissions nor goes back to the UMA token endpoint.
+ * <p>
+ * A decision is keyed by the token, the resource, the http method and the resolved claims. It is kept for
+ * at most the configured lifespan and never outlives the tokens it was granted from.
+ *
+ * @author penough
+ */
+public class AuthorizationDecisionCache {
+
+    private final SegmentedLruCache<DecisionKey, AccessToken> cache;
+    private final long lifespan;
+
+    /**
+     * @param maxEntries the maximum number of decisions to keep
+     * @param lifespan the time in milliseconds a decision can be reused. If {@code -1}, only the token expiration applies
+     */
+    public AuthorizationDecisionCache(int maxEntries, long lifespan) {
+        this.cache = new SegmentedLruCache<>(maxEntries, lifespan);
+        this.lifespan = lifespan;
+    }
+
+    public static DecisionKey key(String rawAccessToken, AccessToken accessToken, PathConfig pathConfig, HttpMethod method,
+                                  Map<String, List<String>> claims) {
+        return new DecisionKey(Tokens.identity(rawAccessToken, accessToken), pathConfig.getId(), pathConfig.getPath(), method.name(), claims);
+    }
+
+    /**
+     * @return the token holding the granted permissions, or {@code null} if no live decision exists
+     */
+    public AccessToken get(DecisionKey key) {
+        return cache.get(key);
+    }
+
+    /**
+     * @param granted the token the decision was granted with
+     * @param issuers the tokens the granted permissions come from, the decision expires with the first of them
+     */
+    public void put(DecisionKey key, AccessToken granted, AccessToken... issuers) {
+        cache.put(key, granted, Tokens.expiration(lifespan == -1 ? -1 : Time.currentTimeMillis() + lifespan, issuers));
+    }
+
+    /**
+     * Drops every decision taken for the given resource, whatever the token.
+     */
+    public void invalidate(PathConfig pathConfig) {
+        String id = pathConfig.getId();
+        String path = pathConfig.getPath();
+        cache.removeIf(key -> Objects.equals(key.resourceId(), id) && Objects.equals(key.path(), path));
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public long hitCount() {
+        return cache.hitCount();
+    }
+
+    public long missCount() {
+        return cache.missCount();
+    }
+
+    public record DecisionKey(String token, String resourceId, String path, String method,
+                              Map<String, List<String>> claims) {
+    }
+}
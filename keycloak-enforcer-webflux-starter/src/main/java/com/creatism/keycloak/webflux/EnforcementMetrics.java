@@ -0,0 +1,62 @@
+package com.creatism.keycloak.webflux;
+
+import org.keycloak.representations.adapters.config.PolicyEnforcerConfig.PathConfig;
+import reactor.core.publisher.Mono;
+
+import java.util.function.ToLongFunction;
+
+/**
+ * Instrumentation of the {@link WebPolicyEnforcer}. Every method defaults to doing nothing, so the
+ * {@link #NOOP} instance used when metrics are disabled costs no more than a virtual call.
+ *
+ * @author penough
+ */
+public interface EnforcementMetrics {
+
+    EnforcementMetrics NOOP = new EnforcementMetrics() {
+    };
+
+    enum Stage {
+        PATH_MATCH,
+        TOKEN_EXTRACTION,
+        CLAIM_RESOLUTION,
+        LOCAL_DECISION,
+        UMA_CALL
+    }
+
+    enum Outcome {
+        GRANTED,
+        DENIED,
+        CHALLENGED
+    }
+
+    /**
+     * Times the given stage from subscription to termination.
+     */
+    default <T> Mono<T> time(Stage stage, Mono<T> mono) {
+        return mono;
+    }
+
+    /**
+     * @return the start of a synchronous stage, to be passed to {@link #stop(Stage, long)}
+     */
+    default long start() {
+        return 0L;
+    }
+
+    default void stop(Stage stage, long start) {
+    }
+
+    /**
+     * @param pathConfig the matched path, or {@code null} if none matched
+     */
+    default void recordDecision(PathConfig pathConfig, Outcome outcome) {
+    }
+
+    /**
+     * Exposes the hit and miss counts of a cache.
+     */
+    default <C> void bindCache(String name, C cache, ToLongFunction<C> hitCount, ToLongFunction<C> missCount,
+                               ToLongFunction<C> size) {
+    }
+}
@@ -4,10 +4,21 @@ import com.creatism.keycloak.webflux.adapter.authorization.cip.ReactiveClaimInfo
 import com.creatism.keycloak.webflux.adapter.authorization.cip.WebHttpClaimInformationPointProvider;
 import com.creatism.keycloak.webflux.adapter.authorization.util.WebPlaceHolders;
 import com.creatism.keycloak.webflux.adapter.authorization.util.WebRequestPlaceHolderResolver;
+import com.creatism.keycloak.webflux.client.WebHttpClientFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Condition;
+import org.springframework.context.annotation.ConditionContext;
+import org.springframework.context.annotation.Conditional;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
+import org.springframework.core.type.AnnotatedTypeMetadata;
 import org.springframework.security.oauth2.client.web.server.ServerOAuth2AuthorizedClientRepository;
+import org.springframework.util.ClassUtils;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
 
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -30,18 +41,69 @@ public class KeycloakWebPolicyEnforcerAutoConfiguration {
         return webPlaceHolders;
     }
 
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider keycloakConnectionProvider(WebPolicyEnforcerProperties properties) {
+        return WebHttpClientFactory.connectionProvider(properties.getHttpClient());
+    }
+
     @Bean
-    public Map<String, ReactiveClaimInformationPointProvider> claimProviders(WebPlaceHolders placeHolders) {
+    public HttpClient keycloakHttpClient(WebPolicyEnforcerProperties properties, ConnectionProvider keycloakConnectionProvider) {
+        return WebHttpClientFactory.httpClient(keycloakConnectionProvider, properties.getHttpClient());
+    }
+
+    @Bean
+    public Map<String, ReactiveClaimInformationPointProvider> claimProviders(WebPlaceHolders placeHolders, HttpClient keycloakHttpClient) {
         Map<String, ReactiveClaimInformationPointProvider> claimProviders = new LinkedHashMap<>();
-        ReactiveClaimInformationPointProvider httpClaimInformationPointProvider = new WebHttpClaimInformationPointProvider(placeHolders);
+        ReactiveClaimInformationPointProvider httpClaimInformationPointProvider = new WebHttpClaimInformationPointProvider(placeHolders,
+                WebHttpClientFactory.webClient(keycloakHttpClient));
         claimProviders.put(httpClaimInformationPointProvider.getName(), httpClaimInformationPointProvider);
         return claimProviders;
     }
 
     @Bean
     public WebPolicyEnforcer webPolicyEnforcer(WebPolicyEnforcerProperties properties, ServerOAuth2AuthorizedClientRepository clientRepository,
-                                               Map<String, ReactiveClaimInformationPointProvider> claimProviders) {
-        return new WebPolicyEnforcer(properties, clientRepository, claimProviders);
+                                               Map<String, ReactiveClaimInformationPointProvider> claimProviders,
+                                               ObjectProvider<EnforcementMetrics> metrics, HttpClient keycloakHttpClient) {
+        WebPolicyEnforcer enforcer = new WebPolicyEnforcer(properties, clientRepository, claimProviders,
+                WebHttpClientFactory.webClient(keycloakHttpClient));
+        metrics.ifAvailable(enforcer::setMetrics);
+        return enforcer;
+    }
+
+    @Bean
+    public WebPolicyEnforcerReadiness webPolicyEnforcerReadiness(WebPolicyEnforcer webPolicyEnforcer) {
+        return new WebPolicyEnforcerReadiness(webPolicyEnforcer);
     }
 
+
+    @Slf4j
+    @Configuration(proxyBeanMethods = false)
+    @Conditional(MicrometerMetricsCondition.class)
+    static class MicrometerMetricsConfiguration {
+
+        /**
+         * the registry is looked up lazily, enabling the metrics without any registry leaves them unrecorded
+         */
+        @Bean
+        public EnforcementMetrics enforcementMetrics(ObjectProvider<MeterRegistry> meterRegistry) {
+            MeterRegistry registry = meterRegistry.getIfAvailable();
+            if (registry == null) {
+                log.warn("Enforcement metrics are enabled but there is no MeterRegistry bean, they are not recorded.");
+                return EnforcementMetrics.NOOP;
+            }
+            return new MicrometerEnforcementMetrics(registry);
+        }
+    }
+
+    /**
+     * matches when metrics are enabled and micrometer is on the classpath
+     */
+    static class MicrometerMetricsCondition implements Condition {
+
+        @Override
+        public boolean matches(ConditionContext context, AnnotatedTypeMetadata metadata) {
+            return context.getEnvironment().getProperty("spring.keycloak.web-policy-enforcer.metrics.enabled", Boolean.class, false)
+                    && ClassUtils.isPresent("io.micrometer.core.instrument.MeterRegistry", context.getClassLoader());
+        }
+    }
 }
@@ -0,0 +1,96 @@
+package com.creatism.keycloak.webflux;
+
+import org.keycloak.representations.adapters.config.PolicyEnforcerConfig;
+import org.keycloak.representations.adapters.config.PolicyEnforcerConfig.MethodConfig;
+import org.keycloak.representations.adapters.config.PolicyEnforcerConfig.PathConfig;
+import org.springframework.http.HttpMethod;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The method configurations of a path resolved for every http method once, so looking up the scopes
+ * required by a request neither scans the declared methods nor builds a default configuration.
+ * <p>
+ * The first declared configuration of a method wins, the other methods get the default one: their name as
+ * the only scope when the http method is used as scope, the scopes of the path otherwise. The returned
+ * configurations are private copies whose scopes are unmodifiable and shared between the equal lists of the path,
+ * the same instance is returned for a method every time so it can key the caches of the enforcer.
+ *
+ * @author penough
+ */
+final class MethodConfigTable {
+
+    /**
+     * the methods outside of {@link HttpMethod#values()} are chosen by the clients, only that many are kept
+     */
+    static final int MAX_EXTENSION_METHODS = 32;
+
+    private final Map<String, MethodConfig> methods;
+    private final Map<String, MethodConfig> extensionMethods = new ConcurrentHashMap<>();
+    private final List<String> pathScopes;
+    private final boolean httpMethodAsScope;
+
+    private MethodConfigTable(Map<String, MethodConfig> methods, List<String> pathScopes, boolean httpMethodAsScope) {
+        this.methods = methods;
+        this.pathScopes = pathScopes;
+        this.httpMethodAsScope = httpMethodAsScope;
+    }
+
+    static MethodConfigTable compile(PathConfig pathConfig, boolean httpMethodAsScope) {
+        Map<List<String>, List<String>> interned = new HashMap<>();
+        List<String> pathScopes = intern(interned, pathConfig.getScopes());
+        Map<String, MethodConfig> methods = new HashMap<>();
+        if (pathConfig.getMethods() != null) {
+            for (MethodConfig declared : pathConfig.getMethods()) {
+                if (!methods.containsKey(declared.getMethod())) {
+                    MethodConfig methodConfig = new MethodConfig();
+                    methodConfig.setMethod(declared.getMethod());
+                    methodConfig.setScopes(declared.getScopes() != null ? intern(interned, declared.getScopes()) : null);
+                    methodConfig.setScopesEnforcementMode(declared.getScopesEnforcementMode());
+                    methods.put(declared.getMethod(), methodConfig);
+                }
+            }
+        }
+        MethodConfigTable table = new MethodConfigTable(methods, pathScopes, httpMethodAsScope);
+        for (HttpMethod method : HttpMethod.values()) {
+            methods.computeIfAbsent(method.name(), table::defaultConfig);
+        }
+        return table;
+    }
+
+    MethodConfig get(HttpMethod method) {
+        MethodConfig methodConfig = methods.get(method.name());
+        if (methodConfig != null) {
+            return methodConfig;
+        }
+        // only non standard methods miss the table
+        methodConfig = extensionMethods.get(method.name());
+        if (methodConfig == null) {
+            methodConfig = defaultConfig(method.name());
+            if (extensionMethods.size() < MAX_EXTENSION_METHODS) {
+                MethodConfig existing = extensionMethods.putIfAbsent(method.name(), methodConfig);
+                if (existing != null) {
+                    methodConfig = existing;
+                }
+            }
+        }
+        return methodConfig;
+    }
+
+    private MethodConfig defaultConfig(String method) {
+        MethodConfig methodConfig = new MethodConfig();
+        methodConfig.setMethod(method);
+        methodConfig.setScopes(httpMethodAsScope ? Collections.singletonList(method) : pathScopes);
+        methodConfig.setScopesEnforcementMode(PolicyEnforcerConfig.ScopeEnforcementMode.ANY);
+        return methodConfig;
+    }
+
+    private static List<String> intern(Map<List<String>, List<String>> interned, List<String> scopes) {
+        if (scopes == null || scopes.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<String> copy = Collections.unmodifiableList(new ArrayList<>(scopes));
+        return interned.computeIfAbsent(copy, k -> copy);
+    }
+}
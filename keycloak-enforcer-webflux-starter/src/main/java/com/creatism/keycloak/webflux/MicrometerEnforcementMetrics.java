@@ -0,0 +1,125 @@
+package com.creatism.keycloak.webflux;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.keycloak.representations.adapters.config.PolicyEnforcerConfig.PathConfig;
+import reactor.core.publisher.Mono;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+
+/**
+ * {@link EnforcementMetrics} recorded into a Micrometer {@link MeterRegistry}.
+ * <ul>
+ *     <li>{@code keycloak.enforcer.stage} timers tagged by {@code stage}</li>
+ *     <li>{@code keycloak.enforcer.decisions} counters tagged by {@code outcome} and {@code path}, the pattern of the
+ *     matched path configuration. Past {@link #MAX_PATH_TAGS} distinct patterns, decisions are tagged
+ *     {@value #OTHER_PATHS}</li>
+ *     <li>{@code keycloak.enforcer.cache.gets} counters tagged by {@code cache} and {@code result}, and
+ *     {@code keycloak.enforcer.cache.size} gauges</li>
+ * </ul>
+ *
+ * @author penough
+ */
+public class MicrometerEnforcementMetrics implements EnforcementMetrics {
+
+    static final int MAX_PATH_TAGS = 500;
+    static final String OTHER_PATHS = "other";
+    private static final String NO_PATH = "none";
+
+    private final MeterRegistry registry;
+    private final Map<Stage, Timer> stageTimers = new EnumMap<>(Stage.class);
+    private final Map<Outcome, Map<String, Counter>> decisionCounters = new EnumMap<>(Outcome.class);
+
+    public MicrometerEnforcementMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        for (Stage stage : Stage.values()) {
+            stageTimers.put(stage, Timer.builder("keycloak.enforcer.stage")
+                    .description("time spent in a stage of the policy enforcement")
+                    .tag("stage", tagValue(stage))
+                    .register(registry));
+        }
+        for (Outcome outcome : Outcome.values()) {
+            decisionCounters.put(outcome, new ConcurrentHashMap<>());
+        }
+    }
+
+    @Override
+    public <T> Mono<T> time(Stage stage, Mono<T> mono) {
+        Timer timer = stageTimers.get(stage);
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return mono.doFinally(signal -> timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+        });
+    }
+
+    @Override
+    public long start() {
+        return System.nanoTime();
+    }
+
+    @Override
+    public void stop(Stage stage, long start) {
+        stageTimers.get(stage).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void recordDecision(PathConfig pathConfig, Outcome outcome) {
+        Map<String, Counter> counters = decisionCounters.get(outcome);
+        String path = pathTag(pathConfig);
+        Counter counter = counters.get(path);
+        if (counter == null) {
+            // resources loaded from the server on demand may register a path per instance
+            if (counters.size() >= MAX_PATH_TAGS) {
+                path = OTHER_PATHS;
+            }
+            counter = counters.computeIfAbsent(path, name -> Counter.builder("keycloak.enforcer.decisions")
+                    .description("policy enforcement decisions")
+                    .tag("outcome", tagValue(outcome))
+                    .tag("path", name)
+                    .register(registry));
+        }
+        counter.increment();
+    }
+
+    @Override
+    public <C> void bindCache(String name, C cache, ToLongFunction<C> hitCount, ToLongFunction<C> missCount,
+                              ToLongFunction<C> size) {
+        FunctionCounter.builder("keycloak.enforcer.cache.gets", cache, c -> hitCount.applyAsLong(c))
+                .tag("cache", name)
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("keycloak.enforcer.cache.gets", cache, c -> missCount.applyAsLong(c))
+                .tag("cache", name)
+                .tag("result", "miss")
+                .register(registry);
+        Gauge.builder("keycloak.enforcer.cache.size", cache, c -> size.applyAsLong(c))
+                .tag("cache", name)
+                .register(registry);
+    }
+
+    /**
+     * @return the configured pattern, never the requested uri
+     */
+    private static String pathTag(PathConfig pathConfig) {
+        if (pathConfig == null) {
+            return NO_PATH;
+        }
+        PathConfig configured = pathConfig.getParentConfig() != null ? pathConfig.getParentConfig() : pathConfig;
+        if (configured.getPath() != null) {
+            return configured.getPath();
+        }
+        return configured.getName() != null ? configured.getName() : NO_PATH;
+    }
+
+    private static String tagValue(Enum<?> value) {
+        return value.name().toLowerCase(Locale.ROOT).replace('_', '.');
+    }
+}
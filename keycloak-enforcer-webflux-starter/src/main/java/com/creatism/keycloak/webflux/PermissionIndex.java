@@ -0,0 +1,175 @@
+package com.creatism.keycloak.webflux;
+
+import com.creatism.keycloak.webflux.client.util.SegmentedLruCache;
+import org.keycloak.representations.adapters.config.PolicyEnforcerConfig.MethodConfig;
+import org.keycloak.representations.adapters.config.PolicyEnforcerConfig.PathConfig;
+import org.keycloak.representations.adapters.config.PolicyEnforcerConfig.ScopeEnforcementMode;
+import org.keycloak.representations.idm.authorization.Permission;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The permissions of a token indexed by resource id, with their scopes as bit masks, so evaluating a path only
+ * visits the permissions of its resource and compares scopes with a few bit operations.
+ * <p>
+ * The permissions are visited in the order of the token, the first one granting the scopes wins exactly as when
+ * scanning them all.
+ *
+ * @author penough
+ */
+final class PermissionIndex {
+
+    private static final int[] NONE = new int[0];
+
+    private final Permission[] permissions;
+    /**
+     * scope masks by position, {@code null} when the permission grants every scope
+     */
+    private final long[][] allowed;
+    private final Map<String, int[]> byResource;
+    private final int[] resourceless;
+
+    private PermissionIndex(Permission[] permissions, long[][] allowed, Map<String, int[]> byResource, int[] resourceless) {
+        this.permissions = permissions;
+        this.allowed = allowed;
+        this.byResource = byResource;
+        this.resourceless = resourceless;
+    }
+
+    static PermissionIndex build(Collection<Permission> granted, Scopes scopes) {
+        Permission[] permissions = granted.toArray(new Permission[0]);
+        long[][] allowed = new long[permissions.length][];
+        Map<String, List<Integer>> positions = new HashMap<>();
+        List<Integer> resourceless = new ArrayList<>();
+
+        for (int i = 0; i < permissions.length; i++) {
+            Permission permission = permissions[i];
+            Set<String> allowedScopes = permission.getScopes();
+            allowed[i] = allowedScopes == null || allowedScopes.isEmpty() ? null : scopes.mask(allowedScopes);
+            if (permission.getResourceId() != null) {
+                positions.computeIfAbsent(permission.getResourceId(), k -> new ArrayList<>()).add(i);
+            } else {
+                resourceless.add(i);
+            }
+        }
+        Map<String, int[]> byResource = new HashMap<>(positions.size() * 2);
+        positions.forEach((resourceId, list) -> byResource.put(resourceId, toArray(list)));
+        return new PermissionIndex(permissions, allowed, byResource, toArray(resourceless));
+    }
+
+    /**
+     * @return the first permission of the path's resource, or without resource, that grants the required scopes,
+     * or {@code null} if none does. The permissions of the parent of an instance never grant it
+     */
+    Permission find(PathConfig pathConfig, MethodConfig methodConfig, Scopes scopes) {
+        int[] own = positions(pathConfig.getId());
+        long[] required = scopes.required(methodConfig);
+        ScopeEnforcementMode mode = methodConfig.getScopesEnforcementMode();
+        boolean noRequiredScopes = methodConfig.getScopes() == null || methodConfig.getScopes().isEmpty();
+
+        // merge both ascending position lists to keep the order of the token
+        int i = 0;
+        int k = 0;
+        while (i < own.length || k < resourceless.length) {
+            int position;
+            if (k == resourceless.length || (i < own.length && own[i] < resourceless[k])) {
+                position = own[i++];
+            } else {
+                position = resourceless[k++];
+            }
+            if (grants(allowed[position], required, mode, noRequiredScopes)) {
+                return permissions[position];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return whether any permission targets the path's resource, or its parent's for an instance
+     */
+    boolean hasResource(PathConfig pathConfig) {
+        if (byResource.containsKey(pathConfig.getId())) {
+            return true;
+        }
+        return pathConfig.isInstance() && pathConfig.getParentConfig() != null
+                && byResource.containsKey(pathConfig.getParentConfig().getId());
+    }
+
+    private int[] positions(String resourceId) {
+        int[] positions = resourceId != null ? byResource.get(resourceId) : null;
+        return positions != null ? positions : NONE;
+    }
+
+    private static boolean grants(long[] allowed, long[] required, ScopeEnforcementMode mode, boolean noRequiredScopes) {
+        if (allowed == null) {
+            return true;
+        }
+        if (ScopeEnforcementMode.ALL.equals(mode)) {
+            for (int w = 0; w < required.length; w++) {
+                long granted = w < allowed.length ? allowed[w] : 0L;
+                if ((required[w] & ~granted) != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (ScopeEnforcementMode.ANY.equals(mode)) {
+            for (int w = 0, n = Math.min(required.length, allowed.length); w < n; w++) {
+                if ((required[w] & allowed[w]) != 0) {
+                    return true;
+                }
+            }
+        }
+        return noRequiredScopes;
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+
+    /**
+     * Numbers the scope names of a realm, a scope set is then a mask with the bits of its scopes.
+     */
+    static final class Scopes {
+
+        private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+        private final AtomicInteger nextId = new AtomicInteger();
+        /**
+         * keyed by identity, {@link MethodConfig} does not override equals
+         */
+        private final SegmentedLruCache<MethodConfig, long[]> requiredMasks;
+
+        Scopes(int maxMethodConfigs) {
+            this.requiredMasks = new SegmentedLruCache<>(maxMethodConfigs, -1);
+        }
+
+        long[] mask(Collection<String> scopes) {
+            long[] mask = new long[0];
+            for (String scope : scopes) {
+                int id = ids.computeIfAbsent(scope, s -> nextId.getAndIncrement());
+                int word = id >>> 6;
+                if (word >= mask.length) {
+                    mask = Arrays.copyOf(mask, word + 1);
+                }
+                mask[word] |= 1L << id;
+            }
+            return mask;
+        }
+
+        long[] required(MethodConfig methodConfig) {
+            long[] mask = requiredMasks.get(methodConfig);
+            if (mask == null) {
+                List<String> scopes = methodConfig.getScopes();
+                mask = scopes != null ? mask(scopes) : new long[0];
+                requiredMasks.put(methodConfig, mask);
+            }
+            return mask;
+        }
+    }
+}
@@ -23,9 +23,13 @@ public class PolicyEnforcerWebFilter implements WebFilter {
             new AdaptedHttpBasicServerAuthenticationEntryPoint());
 
     @Override
-    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+    public Mono<Void> filter(ServerWebExchange serverWebExchange, WebFilterChain chain) {
+        AuthorizationContext bypass = enforcer.bypass(serverWebExchange.getRequest());
+        if (bypass != null) {
+            return filterAuthorizationContext(bypass, serverWebExchange, chain);
+        }
+        ServerWebExchange exchange = enforcer.prepare(serverWebExchange);
         return enforcer.enforce(exchange)
-                .log()
                 .switchIfEmpty(Mono.empty())
                 .flatMap(ac -> filterAuthorizationContext(ac, exchange, chain))
                 .onErrorResume(AuthenticationException.class, (ex) -> this.authenticationFailureHandler
@@ -0,0 +1,64 @@
+package com.creatism.keycloak.webflux;
+
+import com.creatism.keycloak.webflux.client.util.SegmentedLruCache;
+import org.keycloak.common.util.Time;
+import org.keycloak.representations.AccessToken;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps, per access token and pushed claims, the token upgraded with every permission obtained so far, so
+ * the resources of a family requested up front are then authorized locally.
+ * <p>
+ * An entry expires with the first of the tokens its permissions come from. Cached tokens are shared between
+ * requests and must be treated as read-only.
+ *
+ * @author penough
+ */
+public class RptCache {
+
+    private final SegmentedLruCache<RptKey, AccessToken> cache;
+
+    public RptCache(int maxEntries) {
+        this.cache = new SegmentedLruCache<>(maxEntries, -1);
+    }
+
+    public static RptKey key(String rawAccessToken, AccessToken accessToken, Map<String, List<String>> claims) {
+        return new RptKey(Tokens.identity(rawAccessToken, accessToken), claims);
+    }
+
+    /**
+     * @return the upgraded token, or {@code null} if no live one exists
+     */
+    public AccessToken get(RptKey key) {
+        return cache.get(key);
+    }
+
+    /**
+     * @param upgraded the token holding every permission granted so far
+     * @param issuers the tokens the permissions come from, the entry expires with the first of them
+     */
+    public void put(RptKey key, AccessToken upgraded, AccessToken... issuers) {
+        long expiration = Tokens.expiration(-1, issuers);
+        // tokens without expiration are not cached, nothing would ever evict them but the LRU
+        if (expiration != -1 && expiration > Time.currentTimeMillis()) {
+            cache.put(key, upgraded, expiration);
+        }
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public long hitCount() {
+        return cache.hitCount();
+    }
+
+    public long missCount() {
+        return cache.missCount();
+    }
+
+    public record RptKey(String token, Map<String, List<String>> claims) {
+    }
+}
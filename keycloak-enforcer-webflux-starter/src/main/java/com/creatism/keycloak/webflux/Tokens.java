@@ -0,0 +1,37 @@
+package com.creatism.keycloak.webflux;
+
+import org.keycloak.representations.AccessToken;
+
+/**
+ * What the decision and rpt caches consider the same token, and how long what it granted may be kept, shared so
+ * both caches agree.
+ *
+ * @author penough
+ */
+final class Tokens {
+
+    private Tokens() {
+    }
+
+    /**
+     * @return the jti, unique per issued token, or the whole token when it is missing
+     */
+    static String identity(String rawAccessToken, AccessToken accessToken) {
+        return accessToken.getId() != null ? accessToken.getId() : rawAccessToken;
+    }
+
+    /**
+     * @param expiration the time in milliseconds an entry expires regardless of the tokens, {@code -1} for none
+     * @param issuers the tokens the cached permissions come from
+     * @return the earliest of the expiration and of the issuers' {@code exp} in milliseconds, {@code -1} if none applies
+     */
+    static long expiration(long expiration, AccessToken... issuers) {
+        for (AccessToken issuer : issuers) {
+            Long exp = issuer.getExp();
+            if (exp != null && (expiration == -1 || exp * 1000 < expiration)) {
+                expiration = exp * 1000;
+            }
+        }
+        return expiration;
+    }
+}
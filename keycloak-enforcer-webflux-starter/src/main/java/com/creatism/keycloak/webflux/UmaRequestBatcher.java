@@ -0,0 +1,122 @@
+package com.creatism.keycloak.webflux;
+
+import org.keycloak.representations.AccessToken;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+
+/**
+ * Aggregates the UMA requests issued for the same token within a short window, so a client firing many
+ * parallel calls after login gets a single RPT from the token endpoint instead of one per resource.
+ * <p>
+ * Requests are only merged when everything but the requested permissions is identical: the token, the way it
+ * is presented and the pushed claims. Every waiter receives the same RPT and evaluates its own permission
+ * against it, the returned token must be treated as read-only.
+ *
+ * @author penough
+ */
+public class UmaRequestBatcher {
+
+    private final Map<UmaRequest, Batch> batches = new ConcurrentHashMap<>();
+    private final Duration window;
+    private final int maxPermissions;
+    private final BiFunction<UmaRequest, Map<String, Set<String>>, Mono<AccessToken>> authorizer;
+
+    /**
+     * @param window the time the first request of a batch waits for others
+     * @param maxPermissions the number of distinct resources that sends a batch before its window elapses
+     * @param authorizer issues the UMA request for the given resources and scopes, all permissions are requested
+     *                   when the map is {@code null} and all scopes of a resource when its scopes are {@code null}
+     */
+    public UmaRequestBatcher(Duration window, int maxPermissions,
+                             BiFunction<UmaRequest, Map<String, Set<String>>, Mono<AccessToken>> authorizer) {
+        this.window = window;
+        this.maxPermissions = Math.max(1, maxPermissions);
+        this.authorizer = authorizer;
+    }
+
+    /**
+     * @param permissions the resources to request and their scopes, or {@code null} to request every permission of
+     *                    the subject. A resource with {@code null} scopes is requested with all of them
+     */
+    public Mono<AccessToken> submit(UmaRequest request, Map<String, Set<String>> permissions) {
+        return Mono.defer(() -> {
+            for (;;) {
+                Batch batch = batches.computeIfAbsent(request, k -> new Batch());
+                boolean first;
+                boolean full;
+                synchronized (batch) {
+                    if (batch.closed) {
+                        // sent meanwhile, a fresh batch takes its place
+                        batches.remove(request, batch);
+                        continue;
+                    }
+                    first = batch.waiters++ == 0;
+                    batch.add(permissions);
+                    full = batch.permissions.size() >= maxPermissions;
+                }
+                if (full) {
+                    send(request, batch);
+                } else if (first) {
+                    Mono.delay(window).subscribe(tick -> send(request, batch));
+                }
+                return batch.result.asMono();
+            }
+        });
+    }
+
+    private void send(UmaRequest request, Batch batch) {
+        Map<String, Set<String>> permissions;
+        synchronized (batch) {
+            if (batch.closed) {
+                return;
+            }
+            batch.closed = true;
+            permissions = batch.requestAll ? null : batch.permissions;
+        }
+        batches.remove(request, batch);
+        authorizer.apply(request, permissions)
+                .subscribe(batch.result::tryEmitValue, batch.result::tryEmitError, batch.result::tryEmitEmpty);
+    }
+
+    /**
+     * What the merged UMA requests have in common.
+     *
+     * @param bearer whether the token is presented as a subject token rather than as the caller's credentials
+     * @param rpt whether the token is sent as the RPT to upgrade
+     */
+    public record UmaRequest(String rawAccessToken, boolean bearer, boolean rpt, Map<String, List<String>> claims) {
+    }
+
+    private static final class Batch {
+        final Map<String, Set<String>> permissions = new LinkedHashMap<>();
+        final Sinks.One<AccessToken> result = Sinks.one();
+        boolean requestAll;
+        boolean closed;
+        int waiters;
+
+        void add(Map<String, Set<String>> requested) {
+            if (requested == null) {
+                requestAll = true;
+                return;
+            }
+            requested.forEach(this::add);
+        }
+
+        void add(String resourceId, Set<String> scopes) {
+            // a resource requested without scopes stands for all of them, merging must not narrow it
+            if (scopes == null || scopes.isEmpty()) {
+                permissions.put(resourceId, null);
+                return;
+            }
+            if (permissions.containsKey(resourceId) && permissions.get(resourceId) == null) {
+                return;
+            }
+            permissions.computeIfAbsent(resourceId, k -> new LinkedHashSet<>()).addAll(scopes);
+        }
+    }
+}
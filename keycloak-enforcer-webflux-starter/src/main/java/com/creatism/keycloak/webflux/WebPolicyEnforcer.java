@@ -1,16 +1,21 @@
 package com.creatism.keycloak.webflux;
 
 import com.creatism.keycloak.webflux.adapter.authorization.cip.ReactiveClaimInformationPointProvider;
+import com.creatism.keycloak.webflux.adapter.authorization.util.AccessTokenCache;
+import com.creatism.keycloak.webflux.adapter.authorization.util.CachingBodyServerHttpRequest;
 import com.creatism.keycloak.webflux.adapter.authorization.util.JsonUtils;
+import com.creatism.keycloak.webflux.client.PathCache;
 import com.creatism.keycloak.webflux.client.WebAuthzClient;
 import com.creatism.keycloak.webflux.client.WebConfiguration;
 import com.creatism.keycloak.webflux.client.WebPathConfigMatcher;
+import com.creatism.keycloak.webflux.client.util.SegmentedLruCache;
 import com.creatism.keycloak.webflux.client.resources.WebPermissionResource;
 import com.creatism.keycloak.webflux.client.resources.WebProtectionResource;
 import lombok.extern.slf4j.Slf4j;
 import org.keycloak.AuthorizationContext;
 import org.keycloak.authorization.client.AuthorizationDeniedException;
 import org.keycloak.common.util.Base64;
+import org.keycloak.common.util.Time;
 import org.keycloak.representations.AccessToken;
 import org.keycloak.representations.adapters.config.PolicyEnforcerConfig;
 import org.keycloak.representations.adapters.config.PolicyEnforcerConfig.EnforcementMode;
@@ -26,15 +31,19 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
 import org.springframework.security.oauth2.client.web.server.ServerOAuth2AuthorizedClientRepository;
 import org.springframework.security.oauth2.core.OAuth2AuthenticationException;
 import org.springframework.security.oauth2.core.OAuth2Error;
 import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.io.IOException;
+import java.time.Duration;
 import java.util.*;
 /**
  *
@@ -48,10 +57,40 @@ public class WebPolicyEnforcer {
     private ServerOAuth2AuthorizedClientRepository clientRepository;
     private WebPathConfigMatcher webPathConfigMatcher;
     private Map<String, ReactiveClaimInformationPointProvider> claimProviders;
+    private AuthorizationDecisionCache decisionCache;
+    private UmaRequestBatcher umaBatcher;
+    private RptCache rptCache;
+    /**
+     * keyed by identity, {@link PathConfig} does not override equals
+     */
+    private final SegmentedLruCache<PathConfig, MethodConfigTable> methodTables = new SegmentedLruCache<>(METHOD_TABLE_CACHE_SIZE, -1);
+    /**
+     * keyed by identity, {@link AccessToken} does not override equals
+     */
+    private final SegmentedLruCache<AccessToken, PermissionIndex> permissionIndexes = new SegmentedLruCache<>(PERMISSION_INDEX_CACHE_SIZE, -1);
+    private final PermissionIndex.Scopes scopes = new PermissionIndex.Scopes(METHOD_TABLE_CACHE_SIZE);
+    private EnforcementMetrics metrics = EnforcementMetrics.NOOP;
+    private final boolean requestBodyRequired;
+    private final AuthorizationContext grantedContext;
     static final String NO_VALID_ACCESS_TOKEN_FOUND = "no_valid_access_token_found";
+    private static final String REQUEST_BODY_PLACEHOLDER = "{request.body";
+    private static final int METHOD_TABLE_CACHE_SIZE = 10000;
+    /**
+     * below that many permissions, scanning them is cheaper than indexing
+     */
+    private static final int PERMISSION_INDEX_MIN_SIZE = 16;
+    private static final int PERMISSION_INDEX_CACHE_SIZE = 10000;
 
     public WebPolicyEnforcer(WebPolicyEnforcerProperties config, ServerOAuth2AuthorizedClientRepository clientRepository,
                              Map<String, ReactiveClaimInformationPointProvider> claimProviders) {
+        this(config, clientRepository, claimProviders, null);
+    }
+
+    /**
+     * @param httpClient the client of the calls to keycloak, or {@code null} if a default instance should be created
+     */
+    public WebPolicyEnforcer(WebPolicyEnforcerProperties config, ServerOAuth2AuthorizedClientRepository clientRepository,
+                             Map<String, ReactiveClaimInformationPointProvider> claimProviders, WebClient httpClient) {
         this.config = config;
 
         WebConfiguration webAuthzClientConfig = new WebConfiguration();
@@ -59,11 +98,102 @@ public class WebPolicyEnforcer {
         webAuthzClientConfig.setAuthServerUrl(config.getAuthServerUrl());
         webAuthzClientConfig.setCredentials(config.getCredentials());
         webAuthzClientConfig.setResource(config.getResource());
+        webAuthzClientConfig.setHttpClient(httpClient);
 
         this.webAuthzClient = WebAuthzClient.create(webAuthzClientConfig);
         this.webPathConfigMatcher = new WebPathConfigMatcher(config, webAuthzClient);
         this.clientRepository = clientRepository;
         this.claimProviders = claimProviders;
+
+        WebPolicyEnforcerProperties.DecisionCacheConfig decisionCacheConfig = config.getDecisionCache();
+        if (decisionCacheConfig != null && decisionCacheConfig.isEnabled()) {
+            this.decisionCache = new AuthorizationDecisionCache(decisionCacheConfig.getMaxEntries(), decisionCacheConfig.getLifespan());
+        }
+        WebPolicyEnforcerProperties.UmaBatchConfig umaBatchConfig = config.getUmaBatch();
+        if (umaBatchConfig != null && umaBatchConfig.isEnabled()) {
+            this.umaBatcher = new UmaRequestBatcher(Duration.ofMillis(umaBatchConfig.getWindow()),
+                    umaBatchConfig.getMaxPermissions(), this::authorize);
+        }
+        WebPolicyEnforcerProperties.ResourceFamilyConfig resourceFamilyConfig = config.getResourceFamily();
+        if (resourceFamilyConfig != null && resourceFamilyConfig.isEnabled()) {
+            this.rptCache = new RptCache(resourceFamilyConfig.getMaxEntries());
+        }
+        this.requestBodyRequired = isRequestBodyPlaceHolderUsed(config);
+        this.grantedContext = createEmptyAuthorizationContext(true);
+    }
+
+    private static boolean isRequestBodyPlaceHolderUsed(WebPolicyEnforcerProperties config) {
+        if (String.valueOf(config.getClaimInformationPointConfig()).contains(REQUEST_BODY_PLACEHOLDER)) {
+            return true;
+        }
+        for (PathConfig pathConfig : config.getPaths()) {
+            if (String.valueOf(pathConfig.getClaimInformationPointConfig()).contains(REQUEST_BODY_PLACEHOLDER)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Decorates the exchange so that the request body can be read by the claim information points and still be
+     * consumed downstream. The exchange is returned as is when no claim reads the body.
+     */
+    public ServerWebExchange prepare(ServerWebExchange exchange) {
+        if (!requestBodyRequired) {
+            return exchange;
+        }
+        return exchange.mutate()
+                .request(new CachingBodyServerHttpRequest(exchange.getRequest(), config.getRequestBody().getMaxSize()))
+                .build();
+    }
+
+    public void setMetrics(EnforcementMetrics metrics) {
+        this.metrics = metrics;
+        metrics.bindCache("path", webPathConfigMatcher.getPathCache(), PathCache::hitCount, PathCache::missCount, PathCache::size);
+        metrics.bindCache("access.token", JsonUtils.getAccessTokenCache(), AccessTokenCache::hitCount,
+                AccessTokenCache::missCount, AccessTokenCache::size);
+        if (decisionCache != null) {
+            metrics.bindCache("decision", decisionCache, AuthorizationDecisionCache::hitCount,
+                    AuthorizationDecisionCache::missCount, AuthorizationDecisionCache::size);
+        }
+        if (rptCache != null) {
+            metrics.bindCache("rpt", rptCache, RptCache::hitCount, RptCache::missCount, RptCache::size);
+        }
+    }
+
+    /**
+     * Completes once the path configurations have been loaded.
+     */
+    public Mono<Void> ready() {
+        return webPathConfigMatcher.ready();
+    }
+
+    /**
+     * Stops the background work of the enforcer.
+     */
+    public void close() {
+        webPathConfigMatcher.close();
+    }
+
+    public boolean isLazyWarmUp() {
+        return config.getBootstrap().isLazyWarmUp();
+    }
+
+    /**
+     * @return a granted context if the request targets a configured path whose enforcement is disabled and may skip
+     * the principal and the token altogether, {@code null} otherwise
+     */
+    public AuthorizationContext bypass(ServerHttpRequest request) {
+        if (!config.isBypassDisabledPaths() || EnforcementMode.DISABLED.equals(config.getEnforcementMode())
+                || isDefaultAccessDeniedUri(request)) {
+            return null;
+        }
+        PathConfig pathConfig = webPathConfigMatcher.matchLocally(request.getPath().toString());
+        if (pathConfig == null || !pathConfig.isStatic() || !EnforcementMode.DISABLED.equals(pathConfig.getEnforcementMode())) {
+            return null;
+        }
+        metrics.recordDecision(pathConfig, EnforcementMetrics.Outcome.GRANTED);
+        return grantedContext;
     }
 
     public Mono<AuthorizationContext> enforce(ServerWebExchange exchange) {
@@ -95,7 +225,7 @@ public class WebPolicyEnforcer {
         // PathConfig
         ServerHttpRequest request = exchange.getRequest();
 
-        return getPathConfig(request)
+        return metrics.time(EnforcementMetrics.Stage.PATH_MATCH, getPathConfig(request))
                 .flatMap(pathConfig -> generateAuthorizationContext(enforcementMode, pathConfig, exchange))
                 .switchIfEmpty(doWithEmptyPathConfig(enforcementMode, exchange));
     }
@@ -103,7 +233,9 @@ public class WebPolicyEnforcer {
     private Mono<AuthorizationContext> doWithEmptyPathConfig(EnforcementMode enforcementMode, ServerWebExchange exchange) {
         return obtainAccessTokenStringFromExchange(exchange)
                 .flatMap(raw -> doWithAccessTokenEmptyPathConfig(enforcementMode, raw, exchange))
-                .switchIfEmpty(handleAccessDenied(exchange.getResponse()));
+                .switchIfEmpty(handleAccessDenied(exchange.getResponse()))
+                .doOnNext(context -> recordDecision(null, context))
+                .doOnError(AuthenticationException.class, e -> metrics.recordDecision(null, EnforcementMetrics.Outcome.DENIED));
     }
 
     private Mono<AuthorizationContext> doWithAccessTokenEmptyPathConfig(EnforcementMode enforcementMode, String rawAccessToken,
@@ -121,16 +253,17 @@ public class WebPolicyEnforcer {
     }
 
     private Mono<String> obtainAccessTokenStringFromExchange(ServerWebExchange exchange) {
-        return exchange.getPrincipal()
+        return metrics.time(EnforcementMetrics.Stage.TOKEN_EXTRACTION, exchange.getPrincipal()
                 .cast(Authentication.class)
-                .flatMap(au -> obtainAccessTokenString(au, exchange));
+                .flatMap(au -> obtainAccessTokenString(au, exchange)));
     }
 
     private Mono<AuthorizationContext> generateAuthorizationContext(EnforcementMode enforcementMode, PathConfig pathConfig,
                                                                     ServerWebExchange exchange) {
         return obtainAccessTokenStringFromExchange(exchange)
-                .flatMap(ts -> checkingPermissionForPath(pathConfig, ts, exchange.getRequest()))
-                .switchIfEmpty(generateAnonymousAuthorizationContext(pathConfig, exchange.getRequest(), exchange.getResponse()));
+                .flatMap(ts -> checkingPermissionForPath(pathConfig, ts, exchange.getRequest())
+                        .doOnNext(context -> recordDecision(pathConfig, context)))
+                .switchIfEmpty(Mono.defer(() -> generateAnonymousAuthorizationContext(pathConfig, exchange.getRequest(), exchange.getResponse())));
     }
 
     private Mono<String> obtainAccessTokenString(Authentication authentication, ServerWebExchange exchange) {
@@ -165,11 +298,14 @@ public class WebPolicyEnforcer {
         if (!isDefaultAccessDeniedUri(request)) {
             if (pathConfig != null) {
                 if (EnforcementMode.DISABLED.equals(pathConfig.getEnforcementMode())) {
+                    metrics.recordDecision(pathConfig, EnforcementMetrics.Outcome.GRANTED);
                     return Mono.just(createEmptyAuthorizationContext(true));
                 } else {
+                    metrics.recordDecision(pathConfig, EnforcementMetrics.Outcome.CHALLENGED);
                     challenge(pathConfig, getRequiredScopes(pathConfig, request), request, response);
                 }
             } else {
+                metrics.recordDecision(null, EnforcementMetrics.Outcome.DENIED);
                 return handleAccessDenied(response);
             }
         }
@@ -185,34 +321,54 @@ public class WebPolicyEnforcer {
             return Mono.just(createAuthorizationContext(accessToken, pathConfig));
         }
         MethodConfig methodConfig = getRequiredScopes(pathConfig, request);
-        return resolveClaims(pathConfig, request)
+        if (hasClaimInformationPoints(pathConfig)) {
+            // a permission granted without claims constraint grants whatever the claims, skip resolving them
+            long decisionStart = metrics.start();
+            boolean authorized = isAuthorized(pathConfig, methodConfig, accessToken, request, Collections.emptyMap());
+            metrics.stop(EnforcementMetrics.Stage.LOCAL_DECISION, decisionStart);
+            if (authorized) {
+                return Mono.just(createGrantedContext(accessToken, pathConfig, request));
+            }
+        }
+        return metrics.time(EnforcementMetrics.Stage.CLAIM_RESOLUTION, resolveClaims(pathConfig, request))
                 .flatMap(claims -> {
-                    if(isAuthorized(pathConfig, methodConfig, accessToken, request, claims)) {
-                        return Mono.just(createAuthorizationContext(accessToken, pathConfig));
+                    AuthorizationDecisionCache.DecisionKey decisionKey = decisionKey(rawAccessToken, accessToken, pathConfig, request, claims);
+                    AccessToken cachedGrant = decisionKey != null ? decisionCache.get(decisionKey) : null;
+                    if (cachedGrant != null) {
+                        log.debug("Authorization GRANTED for path {} from decision cache.", pathConfig);
+                        return Mono.just(createAuthorizationContext(cachedGrant, pathConfig));
+                    }
+                    long decisionStart = metrics.start();
+                    boolean authorized = isAuthorized(pathConfig, methodConfig, accessToken, request, claims);
+                    metrics.stop(EnforcementMetrics.Stage.LOCAL_DECISION, decisionStart);
+                    if(authorized) {
+                        if (decisionKey != null) {
+                            decisionCache.put(decisionKey, accessToken, accessToken);
+                        }
+                        return Mono.just(createGrantedContext(accessToken, pathConfig, request));
+                    }
+                    RptCache.RptKey rptKey = rptCache != null ? RptCache.key(rawAccessToken, accessToken, claims) : null;
+                    AccessToken cachedRpt = rptKey != null ? rptCache.get(rptKey) : null;
+                    if (cachedRpt != null && isAuthorized(pathConfig, methodConfig, cachedRpt, request, claims)) {
+                        log.debug("Authorization GRANTED for path {} from the permissions of its resource family.", pathConfig);
+                        if (decisionKey != null) {
+                            decisionCache.put(decisionKey, cachedRpt, cachedRpt);
+                        }
+                        return Mono.just(createGrantedContext(cachedRpt, pathConfig, request));
                     }
-                    return requestAuthorizationToken(accessToken, rawAccessToken, pathConfig, methodConfig, request, claims)
+                    return metrics.time(EnforcementMetrics.Stage.UMA_CALL,
+                                    requestAuthorizationToken(accessToken, rawAccessToken, pathConfig, methodConfig, request, claims))
                             .map(ac -> {
-                                AccessToken.Authorization authorization = accessToken.getAuthorization();
-                                if (authorization == null) {
-                                    authorization = new AccessToken.Authorization();
-                                    authorization.setPermissions(new ArrayList<Permission>());
+                                AccessToken upgradedToken = cachedRpt != null ? upgrade(rawAccessToken, cachedRpt, ac) : upgrade(rawAccessToken, ac);
+                                if (rptKey != null) {
+                                    rptCache.put(rptKey, upgradedToken, accessToken, ac);
                                 }
-                                AccessToken.Authorization newAuthorization = ac.getAuthorization();
 
-                                if (newAuthorization != null) {
-                                    Collection<Permission> grantedPermissions = authorization.getPermissions();
-                                    Collection<Permission> newPermissions = newAuthorization.getPermissions();
-
-                                    for (Permission newPermission : newPermissions) {
-                                        if (!grantedPermissions.contains(newPermission)) {
-                                            grantedPermissions.add(newPermission);
-                                        }
+                                if (isAuthorized(pathConfig, methodConfig, upgradedToken, request, claims)) {
+                                    if (decisionKey != null) {
+                                        decisionCache.put(decisionKey, upgradedToken, upgradedToken, ac);
                                     }
-                                }
-                                accessToken.setAuthorization(authorization);
-
-                                if (isAuthorized(pathConfig, methodConfig, accessToken, request, claims)) {
-                                    return createAuthorizationContext(accessToken, pathConfig);
+                                    return createGrantedContext(upgradedToken, pathConfig, request);
                                 }
                                 return tailContext(methodConfig);
                             })
@@ -220,10 +376,39 @@ public class WebPolicyEnforcer {
                 });
     }
 
+    /**
+     * @return a private copy of the access token holding the permissions granted by the given tokens as well
+     */
+    private AccessToken upgrade(String rawAccessToken, AccessToken... grants) {
+        // the decoded token is shared through the token cache, merge into a private copy
+        AccessToken upgradedToken = JsonUtils.readAccessToken(rawAccessToken);
+        AccessToken.Authorization authorization = upgradedToken.getAuthorization();
+        if (authorization == null) {
+            authorization = new AccessToken.Authorization();
+            authorization.setPermissions(new ArrayList<Permission>());
+        }
+        Collection<Permission> grantedPermissions = authorization.getPermissions();
+
+        for (AccessToken grant : grants) {
+            AccessToken.Authorization newAuthorization = grant.getAuthorization();
+
+            if (newAuthorization != null) {
+                for (Permission newPermission : newAuthorization.getPermissions()) {
+                    if (!grantedPermissions.contains(newPermission)) {
+                        grantedPermissions.add(newPermission);
+                    }
+                }
+            }
+        }
+        upgradedToken.setAuthorization(authorization);
+        return upgradedToken;
+    }
+
     protected Mono<Void> challenge(PathConfig pathConfig, MethodConfig methodConfig, ServerHttpRequest request,
                                    ServerHttpResponse response) {
         if (isBearerAuthorization(request)) {
-            return getPermissionTicket(pathConfig, methodConfig, webAuthzClient, request)
+            return webAuthzClient.ready()
+                    .flatMap(client -> getPermissionTicket(pathConfig, methodConfig, client, request))
                     .switchIfEmpty(oauth2AuthenticationException(HttpStatus.FORBIDDEN.name()))
                     .map(ticket -> {
                         response.getHeaders().set(HttpHeaders.WWW_AUTHENTICATE, new StringBuilder("UMA realm=\"").append(webAuthzClient.getConfiguration().getRealm()).append("\"").append(",as_uri=\"")
@@ -236,6 +421,10 @@ public class WebPolicyEnforcer {
         return handleAccessDenied(response);
     }
 
+    private void recordDecision(PathConfig pathConfig, AuthorizationContext context) {
+        metrics.recordDecision(pathConfig, context.isGranted() ? EnforcementMetrics.Outcome.GRANTED : EnforcementMetrics.Outcome.DENIED);
+    }
+
     private AuthorizationContext tailContext(MethodConfig methodConfig) {
         if (methodConfig != null && PolicyEnforcerConfig.ScopeEnforcementMode.DISABLED.equals(methodConfig.getScopesEnforcementMode())) {
             return createEmptyAuthorizationContext(true);
@@ -273,9 +462,26 @@ public class WebPolicyEnforcer {
             return false;
         }
 
-        boolean hasPermission = false;
         Collection<Permission> grantedPermissions = authorization.getPermissions();
 
+        if (grantedPermissions.size() >= PERMISSION_INDEX_MIN_SIZE) {
+            PermissionIndex index = permissionIndex(accessToken, grantedPermissions);
+            Permission permission = index.find(actualPathConfig, methodConfig, scopes);
+            if (permission != null) {
+                if (permission.getResourceId() == null) {
+                    return true;
+                }
+                return grantResourcePermission(actualPathConfig, permission, claims);
+            }
+            if (!index.hasResource(actualPathConfig) && EnforcementMode.PERMISSIVE.equals(actualPathConfig.getEnforcementMode())) {
+                return true;
+            }
+            log.debug("Authorization FAILED for path {}. Not enough permissions {}.", actualPathConfig, grantedPermissions);
+            return false;
+        }
+
+        boolean hasPermission = false;
+
         for (Permission permission : grantedPermissions) {
             if (permission.getResourceId() != null) {
                 if (isResourcePermission(actualPathConfig, permission)) {
@@ -286,12 +492,7 @@ public class WebPolicyEnforcer {
                     }
 
                     if (hasResourceScopePermission(methodConfig, permission)) {
-                        log.debug("Authorization GRANTED for path {}. Permissions {}.", actualPathConfig, grantedPermissions);
-                        if (HttpMethod.DELETE.equals(request.getMethod()) && actualPathConfig.isInstance()) {
-                            webPathConfigMatcher.removeFromCache(request.getPath().toString());
-                        }
-
-                        return hasValidClaims(permission, claims);
+                        return grantResourcePermission(actualPathConfig, permission, claims);
                     }
                 }
             } else {
@@ -309,6 +510,56 @@ public class WebPolicyEnforcer {
         return false;
     }
 
+    private boolean grantResourcePermission(PathConfig actualPathConfig, Permission permission, Map<String, List<String>> claims) {
+        log.debug("Authorization GRANTED for path {}. Permission {}.", actualPathConfig, permission);
+        return hasValidClaims(permission, claims);
+    }
+
+    /**
+     * Deleting an instance invalidates the cached paths and decisions, only once the deletion is finally granted
+     * since {@link #isAuthorized} is also evaluated ahead of the claims.
+     */
+    private AuthorizationContext createGrantedContext(AccessToken accessToken, PathConfig pathConfig, ServerHttpRequest request) {
+        if (HttpMethod.DELETE.equals(request.getMethod()) && pathConfig.isInstance()) {
+            webPathConfigMatcher.removeFromCache(request.getPath().toString());
+            if (decisionCache != null) {
+                decisionCache.invalidate(pathConfig);
+            }
+        }
+        return createAuthorizationContext(accessToken, pathConfig);
+    }
+
+    /**
+     * Tokens coming from the token, decision and rpt caches are evaluated many times, their index is kept as long as
+     * they are valid.
+     */
+    private PermissionIndex permissionIndex(AccessToken accessToken, Collection<Permission> grantedPermissions) {
+        PermissionIndex index = permissionIndexes.get(accessToken);
+        if (index == null) {
+            index = PermissionIndex.build(grantedPermissions, scopes);
+            Long exp = accessToken.getExp();
+            if (exp != null && exp * 1000 > Time.currentTimeMillis()) {
+                permissionIndexes.put(accessToken, index, exp * 1000);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * @return the decision cache key, or {@code null} when the decision must not be cached
+     */
+    private AuthorizationDecisionCache.DecisionKey decisionKey(String rawAccessToken, AccessToken accessToken, PathConfig pathConfig,
+                                                               ServerHttpRequest request, Map<String, List<String>> claims) {
+        if (decisionCache == null || isDefaultAccessDeniedUri(request)) {
+            return null;
+        }
+        // deleting an instance invalidates the cached paths and decisions, so it always goes through isAuthorized
+        if (HttpMethod.DELETE.equals(request.getMethod()) && pathConfig.isInstance()) {
+            return null;
+        }
+        return AuthorizationDecisionCache.key(rawAccessToken, accessToken, pathConfig, request.getMethod(), claims);
+    }
+
     private Mono<AccessToken> requestAuthorizationToken(AccessToken accessToken, String rawAccessToken,
                                                   PathConfig pathConfig, MethodConfig methodConfig,
                                                   ServerHttpRequest request, Map<String, List<String>> claims) {
@@ -316,11 +567,54 @@ public class WebPolicyEnforcer {
             return Mono.empty();
         }
 
+        boolean bearer = isBearerAuthorization(request);
+        UmaRequestBatcher.UmaRequest umaRequest = new UmaRequestBatcher.UmaRequest(rawAccessToken, bearer,
+                accessToken.getAuthorization() != null, claims);
+        Map<String, Set<String>> permissions = null;
+        // a session token without permissions yet asks for every permission of the subject
+        if (bearer || umaRequest.rpt()) {
+            permissions = new LinkedHashMap<>();
+            permissions.put(pathConfig.getId(), scopesOf(methodConfig));
+            if (rptCache != null) {
+                // the siblings are requested with all their scopes, the subject is likely to navigate to them next
+                for (PathConfig sibling : webPathConfigMatcher.family(pathConfig, config.getResourceFamily().getMaxResources())) {
+                    if (sibling.getId() != null && !permissions.containsKey(sibling.getId())) {
+                        permissions.put(sibling.getId(), null);
+                    }
+                }
+            }
+        }
+
+        log.debug("Obtaining authorization for authenticated user.");
+        if (umaBatcher != null) {
+            return umaBatcher.submit(umaRequest, permissions);
+        }
+        return authorize(umaRequest, permissions);
+    }
+
+    private static Set<String> scopesOf(MethodConfig methodConfig) {
+        List<String> scopes = methodConfig.getScopes();
+        return scopes == null || scopes.isEmpty() ? null : new LinkedHashSet<>(scopes);
+    }
+
+    /**
+     * @param permissions the requested resources and their scopes, every permission is requested when {@code null}
+     *                    and every scope of a resource when its scopes are {@code null}
+     */
+    private Mono<AccessToken> authorize(UmaRequestBatcher.UmaRequest umaRequest, Map<String, Set<String>> permissions) {
         AuthorizationRequest authzRequest = new AuthorizationRequest();
 
-        if (isBearerAuthorization(request) || accessToken.getAuthorization() != null) {
-            authzRequest.addPermission(pathConfig.getId(), methodConfig.getScopes());
+        if (permissions != null) {
+            permissions.forEach((resourceId, scopes) ->
+                    authzRequest.addPermission(resourceId, scopes == null ? Collections.emptyList() : new ArrayList<>(scopes)));
+            if (rptCache != null && permissions.size() > 1) {
+                // the RPT being upgraded is merged too, keep the token bounded
+                AuthorizationRequest.Metadata metadata = new AuthorizationRequest.Metadata();
+                metadata.setLimit(config.getResourceFamily().getResponsePermissionsLimit());
+                authzRequest.setMetadata(metadata);
+            }
         }
+        Map<String, List<String>> claims = umaRequest.claims();
         if (!claims.isEmpty()) {
             authzRequest.setClaimTokenFormat("urn:ietf:params:oauth:token-type:jwt");
             try {
@@ -331,18 +625,20 @@ public class WebPolicyEnforcer {
             }
         }
 
-        if (accessToken.getAuthorization() != null) {
+        String rawAccessToken = umaRequest.rawAccessToken();
+        if (umaRequest.rpt()) {
             authzRequest.setRpt(rawAccessToken);
         }
 
-        log.debug("Obtaining authorization for authenticated user.");
-        if (isBearerAuthorization(request)) {
+        if (umaRequest.bearer()) {
             authzRequest.setSubjectToken(rawAccessToken);
-            return webAuthzClient.authorization().authorize(authzRequest)
+            return webAuthzClient.ready()
+                    .flatMap(client -> client.authorization().authorize(authzRequest))
                     .map(resp -> JsonUtils.asAccessToken(resp.getToken()))
                     .onErrorResume(AuthorizationDeniedException.class, cause -> Mono.error(cause));
         } else {
-            return webAuthzClient.authorization(rawAccessToken).authorize(authzRequest)
+            return webAuthzClient.ready()
+                    .flatMap(client -> client.authorization(rawAccessToken).authorize(authzRequest))
                     .map(resp -> JsonUtils.asAccessToken(resp.getToken()))
                     .onErrorResume(AuthorizationDeniedException.class, cause -> Mono.error(cause));
         }
@@ -410,28 +706,13 @@ public class WebPolicyEnforcer {
     }
 
     private MethodConfig getRequiredScopes(PathConfig pathConfig, ServerHttpRequest request) {
-        HttpMethod method = request.getMethod();
-        return pathConfig.getMethods().stream()
-                .filter(i -> i.getMethod()
-                        .equals(method.name()))
-                .findFirst()
-                .orElse(generateDefaultMethodConfig(pathConfig, request));
-    }
-
-    private MethodConfig generateDefaultMethodConfig(PathConfig pathConfig, ServerHttpRequest request) {
-        MethodConfig methodConfig = new MethodConfig();
-
-        methodConfig.setMethod(request.getMethod().name());
-        List scopes = new ArrayList<>();
-
-        if (Boolean.TRUE.equals(config.getHttpMethodAsScope())) {
-            scopes.add(request.getMethod());
-        } else {
-            scopes.addAll(pathConfig.getScopes());
+        // path configs are replaced rather than modified once loaded, so their table can be compiled once
+        MethodConfigTable table = methodTables.get(pathConfig);
+        if (table == null) {
+            table = MethodConfigTable.compile(pathConfig, Boolean.TRUE.equals(config.getHttpMethodAsScope()));
+            methodTables.put(pathConfig, table);
         }
-        methodConfig.setScopes(scopes);
-        methodConfig.setScopesEnforcementMode(PolicyEnforcerConfig.ScopeEnforcementMode.ANY);
-        return methodConfig;
+        return table.get(request.getMethod());
     }
 
     private Mono<String> getPermissionTicket(PathConfig pathConfig, MethodConfig methodConfig, WebAuthzClient webAuthzClient,
@@ -455,25 +736,68 @@ public class WebPolicyEnforcer {
     }
 
 
-    protected Mono<Map<String, List<String>>> resolveClaims(PathConfig pathConfig, ServerHttpRequest request) {
-        return Mono.zip(resolveClaims(config.getClaimInformationPointConfig(), request), resolveClaims(pathConfig.getClaimInformationPointConfig(), request),
-                (c1, c2) -> {
-                    c1.putAll(c2);
-                    return c1;
-                })
-                .defaultIfEmpty(new HashMap<>());
+    private boolean hasClaimInformationPoints(PathConfig pathConfig) {
+        return hasClaimInformationPoints(config.getClaimInformationPointConfig())
+                || hasClaimInformationPoints(pathConfig.getClaimInformationPointConfig());
     }
 
-    private Mono<Map<String, List<String>>> resolveClaims(Map<String, Map<String, Object>> claimInformationPointConfig, ServerHttpRequest request) {
+    private boolean hasClaimInformationPoints(Map<String, Map<String, Object>> claimInformationPointConfig) {
         if (claimInformationPointConfig != null) {
-            for (Map.Entry<String, Map<String, Object>> claimDef : claimInformationPointConfig.entrySet()) {
-                ReactiveClaimInformationPointProvider claimProvider = claimProviders.get(claimDef.getKey());
-                if (claimProvider != null) {
-                    return claimProvider.resolve(claimDef.getValue(), request);
+            for (String name : claimInformationPointConfig.keySet()) {
+                if (claimProviders.containsKey(name)) {
+                    return true;
                 }
             }
         }
-        return Mono.empty();
+        return false;
+    }
+
+    /**
+     * Resolves every claim information point of the enforcer and of the path concurrently. The claims are merged in
+     * declaration order, the enforcer's first, so a later claim information point overrides the claims of an
+     * earlier one with the same name.
+     */
+    protected Mono<Map<String, List<String>>> resolveClaims(PathConfig pathConfig, ServerHttpRequest request) {
+        List<Mono<Map<String, List<String>>>> resolutions = new ArrayList<>();
+        addResolutions(resolutions, config.getClaimInformationPointConfig(), request);
+        addResolutions(resolutions, pathConfig.getClaimInformationPointConfig(), request);
+        if (resolutions.isEmpty()) {
+            return Mono.fromSupplier(HashMap::new);
+        }
+        if (resolutions.size() == 1) {
+            return resolutions.get(0).map(claims -> (Map<String, List<String>>) new HashMap<>(claims))
+                    .defaultIfEmpty(new HashMap<>());
+        }
+        return Flux.fromIterable(resolutions)
+                .flatMapSequential(resolution -> resolution, resolutions.size())
+                .collect(HashMap::new, Map::putAll);
+    }
+
+    private void addResolutions(List<Mono<Map<String, List<String>>>> resolutions,
+                                Map<String, Map<String, Object>> claimInformationPointConfig, ServerHttpRequest request) {
+        if (claimInformationPointConfig == null) {
+            return;
+        }
+        WebPolicyEnforcerProperties.ClaimResolutionConfig resolutionConfig = config.getClaimResolution();
+        for (Map.Entry<String, Map<String, Object>> claimDef : claimInformationPointConfig.entrySet()) {
+            ReactiveClaimInformationPointProvider claimProvider = claimProviders.get(claimDef.getKey());
+            if (claimProvider == null) {
+                continue;
+            }
+            Mono<Map<String, List<String>>> resolution = claimProvider.resolve(claimDef.getValue(), request);
+            if (resolutionConfig.getTimeout() > 0) {
+                resolution = resolution.timeout(Duration.ofMillis(resolutionConfig.getTimeout()));
+            }
+            if (!resolutionConfig.isFailOnError()) {
+                // opted in: the claims of a failed provider are missing from the local decision and from the claims
+                // pushed to keycloak, whose policies may grant because a claim is absent
+                resolution = resolution.onErrorResume(cause -> {
+                    log.warn("Failed to resolve claims from claim information point {}.", claimDef.getKey(), cause);
+                    return Mono.empty();
+                });
+            }
+            resolutions.add(resolution);
+        }
     }
 
    protected <T> Mono<T> handleAccessDenied(ServerHttpResponse response) {
@@ -13,4 +13,177 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 @ConfigurationProperties(prefix = "spring.keycloak.web-policy-enforcer")
 public class WebPolicyEnforcerProperties extends PolicyEnforcerConfig {
     private String clientRegistryId;
+    /**
+     * if true, requests to configured paths whose enforcement mode is DISABLED are let through without resolving the
+     * principal nor the token. Their authorization context then carries no permission
+     */
+    private boolean bypassDisabledPaths = false;
+    private DecisionCacheConfig decisionCache = new DecisionCacheConfig();
+    private BootstrapConfig bootstrap = new BootstrapConfig();
+    private SnapshotConfig snapshot = new SnapshotConfig();
+    private SyncConfig sync = new SyncConfig();
+    private MetricsConfig metrics = new MetricsConfig();
+    private RequestBodyConfig requestBody = new RequestBodyConfig();
+    private HttpClientConfig httpClient = new HttpClientConfig();
+    private UmaBatchConfig umaBatch = new UmaBatchConfig();
+    private ResourceFamilyConfig resourceFamily = new ResourceFamilyConfig();
+    private ClaimResolutionConfig claimResolution = new ClaimResolutionConfig();
+
+    /**
+     * cache of granted authorization decisions
+     */
+    @Data
+    public static class DecisionCacheConfig {
+        private boolean enabled = false;
+        private int maxEntries = 10000;
+        /**
+         * milliseconds, decisions never outlive the token they were granted for
+         */
+        private long lifespan = 30000;
+    }
+
+    /**
+     * loading of the path configurations at startup
+     */
+    @Data
+    public static class BootstrapConfig {
+        /**
+         * maximum number of configured paths looked up on the server at the same time
+         */
+        private int concurrency = 16;
+        /**
+         * resources fetched per request when all the resources of the server are loaded
+         */
+        private int pageSize = 500;
+        /**
+         * if true, traffic is served while the paths are still loading and unknown paths are resolved against the
+         * server one by one. Otherwise requests wait for the paths and readiness is refused until they are loaded
+         */
+        private boolean lazyWarmUp = false;
+    }
+
+    /**
+     * local snapshot of the loaded paths, restored at startup and refreshed when the resources on the server change
+     */
+    @Data
+    public static class SnapshotConfig {
+        /**
+         * snapshot file location, no snapshot is kept when not set
+         */
+        private String file;
+        private boolean compress = true;
+    }
+
+    /**
+     * background reconciliation of the loaded paths with the resources of the server, replacing the refresh of
+     * expired paths on request. Not available with lazy-load-paths
+     */
+    @Data
+    public static class SyncConfig {
+        /**
+         * milliseconds between two reconciliations, 0 disables them
+         */
+        private long interval = 0;
+    }
+
+    /**
+     * micrometer metrics of the enforcement, requires a MeterRegistry bean
+     */
+    @Data
+    public static class MetricsConfig {
+        private boolean enabled = false;
+    }
+
+    /**
+     * buffering of request bodies read by the {request.body} claim placeholders
+     */
+    @Data
+    public static class RequestBodyConfig {
+        /**
+         * bytes, resolving claims from a larger body fails while the handlers still receive all of it
+         */
+        private int maxSize = 256 * 1024;
+    }
+
+    /**
+     * aggregation of the UMA requests issued for the same token into a single call to the token endpoint
+     */
+    @Data
+    public static class UmaBatchConfig {
+        private boolean enabled = false;
+        /**
+         * milliseconds the first request waits for others
+         */
+        private long window = 5;
+        /**
+         * distinct resources that send the batch before the window elapses
+         */
+        private int maxPermissions = 32;
+    }
+
+    /**
+     * on a missing permission, request up front every resource registered under the same parent path and authorize
+     * the following requests of the token locally
+     */
+    @Data
+    public static class ResourceFamilyConfig {
+        private boolean enabled = false;
+        /**
+         * resources requested in a single call, the missing one included
+         */
+        private int maxResources = 50;
+        /**
+         * permissions kept in the upgraded token, the permissions of the RPT being upgraded included
+         */
+        private int responsePermissionsLimit = 200;
+        /**
+         * tokens whose upgraded permissions are kept
+         */
+        private int maxEntries = 10000;
+    }
+
+    /**
+     * resolution of the claim information points, all of them are resolved concurrently
+     */
+    @Data
+    public static class ClaimResolutionConfig {
+        /**
+         * milliseconds a claim information point may take, 0 waits as long as it takes
+         */
+        private long timeout = 5000;
+        /**
+         * if true, a failed claim information point fails the request. Otherwise its claims are left out and the
+         * request is decided, and cached, with the remaining claims: policies granting on a missing claim then grant
+         */
+        private boolean failOnError = true;
+    }
+
+    /**
+     * the connection pool shared by the calls to keycloak and to the claim information points. Durations in milliseconds
+     */
+    @Data
+    public static class HttpClientConfig {
+        private int maxConnections = 500;
+        /**
+         * requests waiting for a connection when the pool is exhausted, beyond them requests fail fast
+         */
+        private int pendingAcquireMaxCount = 1000;
+        private long pendingAcquireTimeout = 5000;
+        private long maxIdleTime = 30000;
+        /**
+         * -1 keeps connections as long as they are used
+         */
+        private long maxLifeTime = -1;
+        /**
+         * interval of the background eviction of idle connections, 0 evicts only when connections are acquired
+         */
+        private long evictionInterval = 30000;
+        private long connectTimeout = 5000;
+        private long responseTimeout = 10000;
+        /**
+         * negotiate HTTP/2 with servers supporting it over TLS
+         */
+        private boolean http2 = false;
+        private boolean keepAlive = true;
+    }
 }
@@ -0,0 +1,61 @@
+package com.creatism.keycloak.webflux;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationEventPublisherAware;
+import org.springframework.context.ApplicationListener;
+
+/**
+ * Keeps the application refusing traffic until the {@link WebPolicyEnforcer} has loaded its paths, unless it
+ * warms up lazily.
+ *
+ * @author penough
+ */
+@Slf4j
+public class WebPolicyEnforcerReadiness implements ApplicationListener<AvailabilityChangeEvent<ReadinessState>>,
+        ApplicationEventPublisherAware, InitializingBean {
+
+    private final WebPolicyEnforcer enforcer;
+    private ApplicationEventPublisher publisher;
+    private boolean ready;
+    private boolean refused;
+
+    public WebPolicyEnforcerReadiness(WebPolicyEnforcer enforcer) {
+        this.enforcer = enforcer;
+    }
+
+    @Override
+    public void setApplicationEventPublisher(ApplicationEventPublisher publisher) {
+        this.publisher = publisher;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (enforcer.isLazyWarmUp()) {
+            ready = true;
+            return;
+        }
+        enforcer.ready().subscribe(null, error -> log.error("Policy enforcer is not ready, traffic stays refused.", error),
+                this::onPathsLoaded);
+    }
+
+    @Override
+    public synchronized void onApplicationEvent(AvailabilityChangeEvent<ReadinessState> event) {
+        if (!ready && ReadinessState.ACCEPTING_TRAFFIC.equals(event.getState())) {
+            log.info("Policy enforcer paths are still loading, refusing traffic.");
+            refused = true;
+            AvailabilityChangeEvent.publish(publisher, this, ReadinessState.REFUSING_TRAFFIC);
+        }
+    }
+
+    private synchronized void onPathsLoaded() {
+        ready = true;
+        if (refused) {
+            log.info("Policy enforcer paths loaded, accepting traffic.");
+            AvailabilityChangeEvent.publish(publisher, this, ReadinessState.ACCEPTING_TRAFFIC);
+        }
+    }
+}
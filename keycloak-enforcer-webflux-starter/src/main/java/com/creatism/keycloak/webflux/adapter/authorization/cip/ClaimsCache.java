@@ -0,0 +1,80 @@
+package com.creatism.keycloak.webflux.adapter.authorization.cip;
+
+import com.creatism.keycloak.webflux.client.util.SegmentedLruCache;
+import org.keycloak.common.util.Time;
+import reactor.core.publisher.Mono;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Response cache of a claim information point, enabled by its {@code cache} configuration:
+ * <pre>
+ * cache:
+ *   ttl: 30000            # milliseconds a response is reused
+ *   max-entries: 1000
+ *   negative-ttl: 0       # milliseconds a failure is replayed, 0 retries on the next lookup
+ * </pre>
+ * Concurrent lookups of the same request share a single call.
+ *
+ * @author penough
+ */
+class ClaimsCache {
+
+    private static final long DEFAULT_TTL = 30000;
+    private static final int DEFAULT_MAX_ENTRIES = 1000;
+    private static final long DEFAULT_NEGATIVE_TTL = 0;
+
+    private final SegmentedLruCache<ClaimsRequest, Mono<Map<String, List<String>>>> cache;
+    private final long negativeTtl;
+
+    ClaimsCache(int maxEntries, long ttl, long negativeTtl) {
+        this.cache = new SegmentedLruCache<>(maxEntries, ttl);
+        this.negativeTtl = negativeTtl;
+    }
+
+    static ClaimsCache create(Map<String, Object> config) {
+        return new ClaimsCache((int) longValue(config, "max-entries", DEFAULT_MAX_ENTRIES),
+                longValue(config, "ttl", DEFAULT_TTL), longValue(config, "negative-ttl", DEFAULT_NEGATIVE_TTL));
+    }
+
+    private static long longValue(Map<String, Object> config, String name, long defaultValue) {
+        Object value = config.get(name);
+        return value != null ? Long.parseLong(value.toString().trim()) : defaultValue;
+    }
+
+    /**
+     * @param loader performs the call when no live response is cached
+     * @return the claims, a copy the caller may modify
+     */
+    Mono<Map<String, List<String>>> get(ClaimsRequest request, Supplier<Mono<Map<String, List<String>>>> loader) {
+        Mono<Map<String, List<String>>> shared = cache.get(request);
+        if (shared == null) {
+            AtomicReference<Mono<Map<String, List<String>>>> self = new AtomicReference<>();
+            Mono<Map<String, List<String>>> created = Mono.defer(loader)
+                    .doOnError(error -> onError(request, self.get()))
+                    .cache();
+            self.set(created);
+            shared = cache.putIfAbsent(request, created);
+            if (shared == null) {
+                shared = created;
+            }
+        }
+        return shared.map(HashMap::new);
+    }
+
+    private void onError(ClaimsRequest request, Mono<Map<String, List<String>>> failed) {
+        if (cache.remove(request, failed) && negativeTtl > 0) {
+            cache.put(request, failed, Time.currentTimeMillis() + negativeTtl);
+        }
+    }
+
+    /**
+     * the fully rendered outbound request
+     */
+    record ClaimsRequest(String method, String url, List<String> parameters, List<String> headers) {
+    }
+}
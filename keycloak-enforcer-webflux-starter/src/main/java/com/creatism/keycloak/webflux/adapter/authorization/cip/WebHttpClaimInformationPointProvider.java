@@ -13,10 +13,12 @@ import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
 import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.net.URI;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 /**
  *
  * @author penough
@@ -25,9 +27,17 @@ public class WebHttpClaimInformationPointProvider implements ReactiveClaimInform
 
     private final WebClient httpClient;
     private final WebPlaceHolders webPlaceHolders;
+    /**
+     * response caches of the configurations that enable one, keyed by configuration
+     */
+    private final Map<Map<String, Object>, ClaimsCache> claimsCaches = new ConcurrentHashMap<>();
 
     public WebHttpClaimInformationPointProvider(WebPlaceHolders webPlaceHolders) {
-        this.httpClient = WebClient.create();
+        this(webPlaceHolders, WebClient.create());
+    }
+
+    public WebHttpClaimInformationPointProvider(WebPlaceHolders webPlaceHolders, WebClient httpClient) {
+        this.httpClient = httpClient;
         this.webPlaceHolders = webPlaceHolders;
     }
 
@@ -38,50 +48,72 @@ public class WebHttpClaimInformationPointProvider implements ReactiveClaimInform
 
     @Override
     public Mono<Map<String, List<String>>> resolve(Map<String, Object> config, ServerHttpRequest request) {
-            return executeRequest(config, request)
-                    .map(jsonNode -> {
-                        Map<String, List<String>> claims = new HashMap<>();
-                        Map<String, Object> claimsDef = (Map<String, Object>) config.get("claims");
-                        if (claimsDef == null) {
-                            Iterator<String> nodeNames = jsonNode.fieldNames();
-
-                            while (nodeNames.hasNext()) {
-                                String nodeName = nodeNames.next();
-                                claims.put(nodeName, JsonUtils.getValues(jsonNode.get(nodeName)));
-                            }
-                        } else {
-                            for (Map.Entry<String, Object> claimDef : claimsDef.entrySet()) {
-                                List<String> jsonPaths = new ArrayList<>();
-
-                                if (claimDef.getValue() instanceof Collection) {
-                                    jsonPaths.addAll(Collection.class.cast(claimDef.getValue()));
-                                } else {
-                                    jsonPaths.add(claimDef.getValue().toString());
-                                }
-
-                                List<String> claimValues = new ArrayList<>();
-
-                                for (String path : jsonPaths) {
-                                    claimValues.addAll(JsonUtils.getValues(jsonNode, path));
-                                }
-
-                                claims.put(claimDef.getKey(), claimValues);
-                            }
-                        }
-
-                        return claims;
-                    })
-                    .onErrorResume(error -> Mono.error(new RuntimeException("Could not obtain claims from http claim information point [" + config.get("url") + "] response", error.getCause())));
+        Mono<List<NameValuePair>> headers = config.containsKey("headers")
+                ? generateHeaders(config, request) : Mono.just(Collections.emptyList());
+        return Mono.zip(generateParameters(config, request), headers)
+                .flatMap(resolved -> obtainClaims(config, resolved.getT1(), resolved.getT2()))
+                .onErrorResume(error -> Mono.error(new RuntimeException("Could not obtain claims from http claim information point [" + config.get("url") + "] response", error.getCause())));
+    }
+
+    private Mono<Map<String, List<String>>> obtainClaims(Map<String, Object> config, List<NameValuePair> params, List<NameValuePair> headers) {
+        Object cacheConfig = config.get("cache");
+        if (cacheConfig == null) {
+            return executeRequest(config, params, headers).map(jsonNode -> toClaims(config, jsonNode));
+        }
+        ClaimsCache cache = claimsCaches.computeIfAbsent(config, c -> ClaimsCache.create(Map.class.cast(cacheConfig)));
+        ClaimsCache.ClaimsRequest key = new ClaimsCache.ClaimsRequest(String.valueOf(config.get("method")), String.valueOf(config.get("url")),
+                toStrings(params), toStrings(headers));
+        return cache.get(key, () -> executeRequest(config, params, headers).map(jsonNode -> toClaims(config, jsonNode)));
+    }
+
+    private static List<String> toStrings(List<NameValuePair> pairs) {
+        List<String> strings = new ArrayList<>(pairs.size());
+        for (NameValuePair pair : pairs) {
+            strings.add(pair.toString());
+        }
+        return strings;
+    }
+
+    private Map<String, List<String>> toClaims(Map<String, Object> config, JsonNode jsonNode) {
+        Map<String, List<String>> claims = new HashMap<>();
+        Map<String, Object> claimsDef = (Map<String, Object>) config.get("claims");
+        if (claimsDef == null) {
+            Iterator<String> nodeNames = jsonNode.fieldNames();
+
+            while (nodeNames.hasNext()) {
+                String nodeName = nodeNames.next();
+                claims.put(nodeName, JsonUtils.getValues(jsonNode.get(nodeName)));
+            }
+        } else {
+            for (Map.Entry<String, Object> claimDef : claimsDef.entrySet()) {
+                List<String> jsonPaths = new ArrayList<>();
+
+                if (claimDef.getValue() instanceof Collection) {
+                    jsonPaths.addAll(Collection.class.cast(claimDef.getValue()));
+                } else {
+                    jsonPaths.add(claimDef.getValue().toString());
+                }
+
+                List<String> claimValues = new ArrayList<>();
+
+                for (String path : jsonPaths) {
+                    claimValues.addAll(JsonUtils.getValues(jsonNode, path));
+                }
+
+                claims.put(claimDef.getKey(), claimValues);
+            }
+        }
+
+        return claims;
     }
 
-    private Mono<JsonNode> executeRequest(Map<String, Object> config, ServerHttpRequest request) {
+    private Mono<JsonNode> executeRequest(Map<String, Object> config, List<NameValuePair> params, List<NameValuePair> headers) {
 
         HttpMethod method = HttpMethod.valueOf(Optional.ofNullable(String.valueOf(config.get("method")))
                 .orElse(HttpMethod.GET.name()));
         WebClient.RequestBodyUriSpec spec = httpClient.method(method);
         try {
             URI uri;
-            List<NameValuePair> params = generateParameters(config, request);
             // only support GET and POST
             MultiValueMap formData = null;
             if(HttpMethod.GET.equals(method)) {
@@ -93,11 +125,6 @@ public class WebHttpClaimInformationPointProvider implements ReactiveClaimInform
             }
             spec.uri(uri);
 
-            List<NameValuePair> headers = null;
-            if (config.containsKey("headers")) {
-                headers = generateHeaders(config, request);
-            }
-
             if(!CollectionUtils.isEmpty(headers)) {
                 headers.forEach(h -> spec.header(h.getName(), h.getValue()));
             }
@@ -116,62 +143,47 @@ public class WebHttpClaimInformationPointProvider implements ReactiveClaimInform
                 .onErrorResume(error -> Mono.error(error));
     }
 
-    private List<NameValuePair> generateHeaders(Map<String, Object> config, ServerHttpRequest request) {
+    private Mono<List<NameValuePair>> generateHeaders(Map<String, Object> config, ServerHttpRequest request) {
         Object headersDef = config.get("headers");
 
         if (headersDef != null) {
-            List<NameValuePair> hs = new ArrayList<>();
             Map<String, Object> headers = Map.class.cast(headersDef);
-
-            for (Map.Entry<String, Object> header : headers.entrySet()) {
-                Object value = header.getValue();
-                List<String> headerValues = new ArrayList<>();
-
-                if (value instanceof Collection) {
-                    Collection values = Collection.class.cast(value);
-
-                    for (Object item : values) {
-                        headerValues.addAll(webPlaceHolders.resolve(item.toString(), request));
-                    }
-                } else {
-                    headerValues.addAll(webPlaceHolders.resolve(value.toString(), request));
-                }
-
-                for (String headerValue : headerValues) {
-                    hs.add(new NameValuePair(header.getKey(), headerValue));
-                }
-            }
+            return resolveNameValuePairs(headers, request);
         }
-        return Collections.emptyList();
+        return Mono.just(Collections.emptyList());
     }
 
-    private List<NameValuePair> generateParameters(Map<String, Object> parConfig, ServerHttpRequest request) {
+    private Mono<List<NameValuePair>> generateParameters(Map<String, Object> parConfig, ServerHttpRequest request) {
         Object config = parConfig.get("parameters");
 
         if (config != null) {
             Map<String, Object> paramsDef = Map.class.cast(config);
-            List<NameValuePair> params = new ArrayList<>();
-            for (Map.Entry<String, Object> paramDef : paramsDef.entrySet()) {
-                Object value = paramDef.getValue();
-                List<String> paramValues = new ArrayList<>();
-
-                if (value instanceof Collection) {
-                    Collection values = Collection.class.cast(value);
+            return resolveNameValuePairs(paramsDef, request);
+        }
+        return Mono.just(Collections.emptyList());
+    }
 
-                    for (Object item : values) {
-                        paramValues.addAll(webPlaceHolders.resolve(item.toString(), request));
+    /**
+     * Resolves the placeholders of every value, keeping the definition order.
+     */
+    private Mono<List<NameValuePair>> resolveNameValuePairs(Map<String, Object> definitions, ServerHttpRequest request) {
+        return Flux.fromIterable(definitions.entrySet())
+                .concatMap(definition -> {
+                    Object value = definition.getValue();
+                    List<Object> items = new ArrayList<>();
+
+                    if (value instanceof Collection) {
+                        items.addAll(Collection.class.cast(value));
+                    } else {
+                        items.add(value);
                     }
-                } else {
-                    paramValues.addAll(webPlaceHolders.resolve(value.toString(), request));
-                }
-
-                for (String paramValue : paramValues) {
-                    params.add(new NameValuePair(paramDef.getKey(), paramValue));
-                }
 
-            }
-        }
-        return Collections.emptyList();
+                    return Flux.fromIterable(items)
+                            .concatMap(item -> webPlaceHolders.resolve(item.toString(), request))
+                            .flatMapIterable(values -> values)
+                            .map(resolved -> new NameValuePair(definition.getKey(), resolved));
+                })
+                .collectList();
     }
 
     private String generateQueryParams(List<NameValuePair> params) {
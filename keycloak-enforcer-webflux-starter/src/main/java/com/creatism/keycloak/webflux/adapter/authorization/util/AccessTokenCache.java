@@ -0,0 +1,50 @@
+package com.creatism.keycloak.webflux.adapter.authorization.util;
+
+import com.creatism.keycloak.webflux.client.util.SegmentedLruCache;
+import org.keycloak.common.util.Time;
+import org.keycloak.representations.AccessToken;
+
+import java.util.function.Function;
+
+/**
+ * Bounded cache of decoded access tokens keyed by the raw token, so the same JWT is only base64 decoded and
+ * parsed once while it is valid.
+ * <p>
+ * Cached tokens are shared between requests and must be treated as read-only.
+ *
+ * @author penough
+ */
+public class AccessTokenCache {
+
+    private final SegmentedLruCache<String, AccessToken> cache;
+
+    public AccessTokenCache(int maxEntries) {
+        this.cache = new SegmentedLruCache<>(maxEntries, -1);
+    }
+
+    public AccessToken get(String rawToken, Function<String, AccessToken> parser) {
+        AccessToken token = cache.get(rawToken);
+        if (token != null) {
+            return token;
+        }
+        token = parser.apply(rawToken);
+        Long exp = token.getExp();
+        // tokens without expiration are not cached, nothing would ever evict them but the LRU
+        if (exp != null && exp * 1000 > Time.currentTimeMillis()) {
+            cache.put(rawToken, token, exp * 1000);
+        }
+        return token;
+    }
+
+    public long hitCount() {
+        return cache.hitCount();
+    }
+
+    public long missCount() {
+        return cache.missCount();
+    }
+
+    public int size() {
+        return cache.size();
+    }
+}
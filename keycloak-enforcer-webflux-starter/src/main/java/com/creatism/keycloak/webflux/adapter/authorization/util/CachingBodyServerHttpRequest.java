@@ -0,0 +1,177 @@
+package com.creatism.keycloak.webflux.adapter.authorization.util;
+
+import org.reactivestreams.Subscription;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpRequestDecorator;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Request whose body can be read by the policy enforcer and still be consumed by the downstream handlers.
+ * <p>
+ * The body is only buffered once {@link #getCachedBody()} is called, requests whose body is never inspected
+ * stream it through untouched. A body larger than the maximum size only fails {@link #getCachedBody()}, the
+ * downstream handlers get the buffered part followed by the rest of the stream.
+ *
+ * @author penough
+ */
+public class CachingBodyServerHttpRequest extends ServerHttpRequestDecorator {
+
+    private final int maxSize;
+    private volatile BodyReader reader;
+
+    /**
+     * @param maxSize the maximum number of bytes to buffer, a larger body fails the read
+     */
+    public CachingBodyServerHttpRequest(ServerHttpRequest delegate, int maxSize) {
+        super(delegate);
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Reads the whole body once, later callers and the downstream handlers get the same bytes.
+     *
+     * @return the body, or empty if the request has none
+     */
+    public Mono<byte[]> getCachedBody() {
+        return reader().body.asMono();
+    }
+
+    @Override
+    public Flux<DataBuffer> getBody() {
+        BodyReader current = reader;
+        if (current == null) {
+            return super.getBody();
+        }
+        // the downstream handlers only subscribe once the enforcer is done with the body
+        return current.body.asMono()
+                .onErrorResume(DataBufferLimitException.class, e -> Mono.empty())
+                .thenMany(Flux.create(current::replay));
+    }
+
+    private BodyReader reader() {
+        BodyReader current = reader;
+        if (current == null) {
+            synchronized (this) {
+                current = reader;
+                if (current == null) {
+                    current = new BodyReader();
+                    reader = current;
+                    super.getBody().subscribe(current);
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Buffers the body one chunk at a time up to the maximum size, and stops requesting past it so the rest of the
+     * stream can be handed over to the downstream handlers.
+     */
+    private final class BodyReader extends BaseSubscriber<DataBuffer> {
+
+        private final Sinks.One<byte[]> body = Sinks.one();
+        private final List<byte[]> chunks = new ArrayList<>();
+        private int size;
+        private boolean done;
+        private Throwable error;
+        private FluxSink<DataBuffer> downstream;
+
+        @Override
+        protected void hookOnSubscribe(Subscription subscription) {
+            request(1);
+        }
+
+        @Override
+        protected synchronized void hookOnNext(DataBuffer buffer) {
+            byte[] bytes = new byte[buffer.readableByteCount()];
+            buffer.read(bytes);
+            DataBufferUtils.release(buffer);
+            if (downstream != null) {
+                downstream.next(wrap(bytes));
+                return;
+            }
+            chunks.add(bytes);
+            size += bytes.length;
+            if (size > maxSize) {
+                body.tryEmitError(new DataBufferLimitException("Request body exceeds the limit of " + maxSize + " bytes"));
+                return;
+            }
+            request(1);
+        }
+
+        @Override
+        protected synchronized void hookOnComplete() {
+            done = true;
+            if (downstream != null) {
+                downstream.complete();
+            } else if (size <= maxSize) {
+                if (chunks.isEmpty()) {
+                    body.tryEmitEmpty();
+                } else {
+                    // the joined body replaces its chunks for the downstream handlers
+                    byte[] joined = join();
+                    chunks.clear();
+                    chunks.add(joined);
+                    body.tryEmitValue(joined);
+                }
+            }
+        }
+
+        @Override
+        protected synchronized void hookOnError(Throwable throwable) {
+            done = true;
+            error = throwable;
+            if (downstream != null) {
+                downstream.error(throwable);
+            } else {
+                body.tryEmitError(throwable);
+            }
+        }
+
+        /**
+         * Emits the buffered chunks, then the rest of the stream when the buffering stopped at the maximum size.
+         */
+        private synchronized void replay(FluxSink<DataBuffer> sink) {
+            for (byte[] chunk : chunks) {
+                if (chunk.length > 0) {
+                    sink.next(wrap(chunk));
+                }
+            }
+            if (error != null) {
+                sink.error(error);
+            } else if (done) {
+                sink.complete();
+            } else {
+                chunks.clear();
+                downstream = sink;
+                sink.onRequest(this::request);
+                sink.onCancel(this::cancel);
+            }
+        }
+
+        private byte[] join() {
+            byte[] joined = new byte[size];
+            int position = 0;
+            for (byte[] chunk : chunks) {
+                System.arraycopy(chunk, 0, joined, position, chunk.length);
+                position += chunk.length;
+            }
+            return joined;
+        }
+
+        private DataBuffer wrap(byte[] bytes) {
+            return DefaultDataBufferFactory.sharedInstance.wrap(bytes);
+        }
+    }
+}
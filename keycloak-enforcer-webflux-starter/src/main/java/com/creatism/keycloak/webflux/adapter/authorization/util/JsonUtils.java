@@ -1,8 +1,13 @@
 package com.creatism.keycloak.webflux.adapter.authorization.util;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.filter.FilteringParserDelegate;
+import com.fasterxml.jackson.core.filter.JsonPointerBasedFilter;
+import com.fasterxml.jackson.core.filter.TokenFilter;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.MissingNode;
 import org.keycloak.jose.jws.JWSInput;
 import org.keycloak.representations.AccessToken;
 import org.keycloak.util.JsonSerialization;
@@ -18,6 +23,8 @@ import java.util.List;
  */
 public class JsonUtils {
     private static ObjectMapper objectMapper = new ObjectMapper();
+    private static final int ACCESS_TOKEN_CACHE_MAX_ENTRIES = 10000;
+    private static final AccessTokenCache accessTokenCache = new AccessTokenCache(ACCESS_TOKEN_CACHE_MAX_ENTRIES);
 
     public static JsonNode readTree(String json) throws JsonProcessingException {
         return objectMapper.readTree(json);
@@ -27,6 +34,25 @@ public class JsonUtils {
         return getValues(jsonNode.at(path));
     }
 
+    /**
+     * Same result as {@link #getValues(JsonNode, String)} over the parsed document, but the document is streamed
+     * and only the value the pointer designates is materialized.
+     *
+     * @param path a JSON pointer, or {@code null} for the whole document
+     */
+    public static List<String> getValues(byte[] json, String path) throws IOException {
+        if (path == null) {
+            return getValues(objectMapper.readTree(json));
+        }
+        try (JsonParser parser = new FilteringParserDelegate(objectMapper.createParser(json),
+                new JsonPointerBasedFilter(path), TokenFilter.Inclusion.ONLY_INCLUDE_ALL, false)) {
+            if (parser.nextToken() == null) {
+                return getValues(MissingNode.getInstance());
+            }
+            return getValues(objectMapper.readTree(parser));
+        }
+    }
+
     public static List<String> getValues(JsonNode jsonNode) {
         List<String> values = new ArrayList<>();
 
@@ -59,11 +85,26 @@ public class JsonUtils {
         return values;
     }
 
+    /**
+     * Decodes the token, or returns the instance decoded by a previous call until the token expires.
+     * The returned token is shared and must not be modified, use {@link #readAccessToken(String)} for that.
+     */
     public static AccessToken asAccessToken(String rawToken) {
+        return accessTokenCache.get(rawToken, JsonUtils::readAccessToken);
+    }
+
+    /**
+     * Always decodes a new token instance.
+     */
+    public static AccessToken readAccessToken(String rawToken) {
         try {
             return new JWSInput(rawToken).readJsonContent(AccessToken.class);
         } catch (Exception cause) {
             throw new RuntimeException("Failed to decode token", cause);
         }
     }
+
+    public static AccessTokenCache getAccessTokenCache() {
+        return accessTokenCache;
+    }
 }
@@ -17,6 +17,7 @@
 package com.creatism.keycloak.webflux.adapter.authorization.util;
 
 import org.springframework.http.server.reactive.ServerHttpRequest;
+import reactor.core.publisher.Mono;
 
 import java.util.List;
 
@@ -25,7 +26,10 @@ import java.util.List;
  */
 public interface WebPlaceHolderResolver {
 
-    List<String> resolve(String placeHolder, ServerHttpRequest httpFacade);
+    /**
+     * @return the resolved values, or empty if the placeholder could not be resolved
+     */
+    Mono<List<String>> resolve(String placeHolder, ServerHttpRequest httpFacade);
 
     String getName();
 
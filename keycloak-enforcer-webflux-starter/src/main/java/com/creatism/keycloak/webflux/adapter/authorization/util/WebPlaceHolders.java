@@ -1,8 +1,11 @@
 package com.creatism.keycloak.webflux.adapter.authorization.util;
 
 import org.springframework.http.server.reactive.ServerHttpRequest;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 /**
@@ -12,6 +15,10 @@ import java.util.regex.Pattern;
 public class WebPlaceHolders {
 
     private Map<String, WebPlaceHolderResolver> resolvers;
+    /**
+     * the claim definitions are static, each value is parsed once into a template
+     */
+    private final Map<String, Template> templates = new ConcurrentHashMap<>();
 
     private static Pattern PLACEHOLDER_PATTERN = Pattern.compile("\\{(.+?)\\}");
     private static Pattern PLACEHOLDER_PARAM_PATTERN = Pattern.compile("\\[(.+?)\\]");
@@ -24,27 +31,13 @@ public class WebPlaceHolders {
             resolvers = new LinkedHashMap<>();
         }
         this.resolvers.put(resolver.getName(), resolver);
+        // templates are bound to the resolvers known when they were compiled
+        templates.clear();
         return this.resolvers;
     }
 
-    public List<String> resolve(String value, ServerHttpRequest httpFacade) {
-        Map<String, List<String>> placeHolders = parsePlaceHolders(value, httpFacade);
-
-        if (!placeHolders.isEmpty()) {
-            value = formatPlaceHolder(value);
-
-            for (Map.Entry<String, List<String>> entry : placeHolders.entrySet()) {
-                List<String> values = entry.getValue();
-
-                if (values.isEmpty() || values.size() > 1) {
-                    return values;
-                }
-
-                value = value.replaceAll(entry.getKey(), values.get(0)).trim();
-            }
-        }
-
-        return Arrays.asList(value);
+    public Mono<List<String>> resolve(String value, ServerHttpRequest httpFacade) {
+        return templates.computeIfAbsent(value, this::compile).evaluate(httpFacade);
     }
 
     static String getParameter(String source, String messageIfNotFound) {
@@ -61,37 +54,124 @@ public class WebPlaceHolders {
         return null;
     }
 
-    private Map<String, List<String>> parsePlaceHolders(String value, ServerHttpRequest httpFacade) {
-        Map<String, List<String>> placeHolders = Collections.emptyMap();
+    private Template compile(String value) {
         Matcher matcher = PLACEHOLDER_PATTERN.matcher(value);
-        boolean found = matcher.find();
+        List<String> literals = new ArrayList<>();
+        List<Integer> slots = new ArrayList<>();
+        Map<String, Integer> callIndexes = new LinkedHashMap<>();
+        List<Call> calls = new ArrayList<>();
+        int literalStart = 0;
 
-        if (found) {
-            placeHolders = new HashMap<>();
-            do {
-                String placeHolder = matcher.group(1);
-                int resolverNameIdx = placeHolder.indexOf('.');
-
-                if (resolverNameIdx == -1) {
-                    throw new RuntimeException("Invalid placeholder [" + value + "]. Could not find resolver name.");
-                }
+        while (matcher.find()) {
+            String placeHolder = matcher.group(1);
+            int resolverNameIdx = placeHolder.indexOf('.');
 
-                WebPlaceHolderResolver resolver = resolvers.get(placeHolder.substring(0, resolverNameIdx));
+            if (resolverNameIdx == -1) {
+                throw new RuntimeException("Invalid placeholder [" + value + "]. Could not find resolver name.");
+            }
 
-                if (resolver != null) {
-                    List<String> resolved = resolver.resolve(placeHolder, httpFacade);
+            literals.add(formatPlaceHolder(value.substring(literalStart, matcher.start())));
+            literalStart = matcher.end();
 
-                    if (resolved != null) {
-                        placeHolders.put(formatPlaceHolder(placeHolder), resolved);
-                    }
-                }
-            } while (matcher.find());
+            WebPlaceHolderResolver resolver = resolvers != null ? resolvers.get(placeHolder.substring(0, resolverNameIdx)) : null;
+            Integer index = callIndexes.get(placeHolder);
+            if (index == null) {
+                index = calls.size();
+                callIndexes.put(placeHolder, index);
+                calls.add(new Call(resolver, placeHolder, formatPlaceHolder(placeHolder)));
+            }
+            slots.add(index);
         }
+        literals.add(formatPlaceHolder(value.substring(literalStart)));
 
-        return placeHolders;
+        return new Template(value, literals.toArray(new String[0]), slots.stream().mapToInt(Integer::intValue).toArray(),
+                calls.toArray(new Call[0]));
     }
 
     private static String formatPlaceHolder(String placeHolder) {
-        return placeHolder.replaceAll("\\{", "").replace("}", "").replace("[", "").replace("]", "").replace("[", "").replace("]", "");
+        if (placeHolder.indexOf('{') == -1 && placeHolder.indexOf('}') == -1
+                && placeHolder.indexOf('[') == -1 && placeHolder.indexOf(']') == -1) {
+            return placeHolder;
+        }
+        StringBuilder formatted = new StringBuilder(placeHolder.length());
+        for (int i = 0; i < placeHolder.length(); i++) {
+            char c = placeHolder.charAt(i);
+            if (c != '{' && c != '}' && c != '[' && c != ']') {
+                formatted.append(c);
+            }
+        }
+        return formatted.toString();
+    }
+
+    /**
+     * A placeholder resolution, the same placeholder used twice in a value is resolved once.
+     *
+     * @param resolver the resolver, or {@code null} if none is registered under the placeholder's name
+     * @param text the placeholder as rendered when it can not be resolved
+     */
+    private record Call(WebPlaceHolderResolver resolver, String placeHolder, String text) {
+
+        Mono<List<String>> resolve(ServerHttpRequest request) {
+            return resolver != null ? resolver.resolve(placeHolder, request) : Mono.empty();
+        }
+    }
+
+    /**
+     * A value split into literal segments, with the brackets already stripped, around placeholder slots.
+     * {@code literals[i]} precedes {@code slots[i]}, the last literal closes the value.
+     * <p>
+     * A resolved placeholder that is empty or multi-valued is the result of the whole value. Otherwise the
+     * single value of every resolved placeholder is substituted, unresolved ones are rendered as their text.
+     */
+    private record Template(String value, String[] literals, int[] slots, Call[] calls) {
+
+        Mono<List<String>> evaluate(ServerHttpRequest request) {
+            if (calls.length == 0) {
+                return Mono.just(Arrays.asList(value));
+            }
+            if (calls.length == 1) {
+                return calls[0].resolve(request)
+                        .map(values -> {
+                            List<String>[] resolved = newResolved(1);
+                            resolved[0] = values;
+                            return render(resolved);
+                        })
+                        .defaultIfEmpty(Arrays.asList(value));
+            }
+            List<String>[] resolved = newResolved(calls.length);
+            return Flux.range(0, calls.length)
+                    .concatMap(i -> calls[i].resolve(request).doOnNext(values -> resolved[i] = values))
+                    .then(Mono.fromSupplier(() -> render(resolved)));
+        }
+
+        @SuppressWarnings("unchecked")
+        private static List<String>[] newResolved(int size) {
+            return new List[size];
+        }
+
+        private List<String> render(List<String>[] resolved) {
+            boolean anyResolved = false;
+            for (List<String> values : resolved) {
+                if (values == null) {
+                    continue;
+                }
+                if (values.isEmpty() || values.size() > 1) {
+                    return values;
+                }
+                anyResolved = true;
+            }
+            if (!anyResolved) {
+                return Arrays.asList(value);
+            }
+
+            StringBuilder rendered = new StringBuilder(value.length());
+            for (int i = 0; i < slots.length; i++) {
+                rendered.append(literals[i]);
+                List<String> values = resolved[slots[i]];
+                rendered.append(values != null ? values.get(0) : calls[slots[i]].text());
+            }
+            rendered.append(literals[slots.length]);
+            return Arrays.asList(rendered.toString().trim());
+        }
     }
 }
@@ -16,49 +16,38 @@
  */
 package com.creatism.keycloak.webflux.client;
 
+import com.creatism.keycloak.webflux.client.util.SegmentedLruCache;
 import org.keycloak.common.util.Time;
 import org.keycloak.representations.adapters.config.PolicyEnforcerConfig.PathConfig;
 
-import java.util.Collections;
-import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
 
 /**
- * A simple LRU cache implementation supporting expiration and maximum number of entries.
+ * A concurrent LRU cache implementation supporting expiration and maximum number of entries.
+ * <p>
+ * Entries are kept in a {@link SegmentedLruCache}, so lookups from the event loops never block on writers.
  *
  * @author <a href="mailto:psilva@redhat.com">Pedro Igor</a>
  */
 public class PathCache {
 
-    /**
-     * The load factor.
-     */
-    private static final float DEFAULT_LOAD_FACTOR = 0.75f;
-
-    private final Map<String, CacheEntry> cache;
-
-    private final AtomicBoolean writing = new AtomicBoolean(false);
+    private final SegmentedLruCache<String, CacheEntry> cache;
 
     private final long maxAge;
     private final boolean enabled;
-    private final Map<String, PathConfig> paths;
+    private final Supplier<Map<String, PathConfig>> paths;
 
     /**
      * Creates a new instance.
      *  @param maxEntries the maximum number of entries to keep in the cache
      * @param maxAge the time in milliseconds that an entry can stay in the cache. If {@code -1}, entries never expire
-     * @param paths the pre-configured paths
+     * @param paths the pre-configured paths, looked up again at every invalidation
      */
     PathCache(final int maxEntries, long maxAge,
-              Map<String, PathConfig> paths) {
-        cache = Collections.synchronizedMap(new LinkedHashMap<String, CacheEntry>(16, DEFAULT_LOAD_FACTOR, true) {
-            @Override
-            protected boolean removeEldestEntry(Map.Entry eldest) {
-                return cache.size()  > maxEntries;
-            }
-        });
+              Supplier<Map<String, PathConfig>> paths) {
+        // expiration is tracked by the entries themselves so that expired paths get invalidated on read
+        cache = new SegmentedLruCache<>(maxEntries, -1);
         this.maxAge = maxAge;
         this.enabled = ! (maxAge < -1 || (maxAge > -1 && maxAge <= 0));
         this.paths = paths;
@@ -73,23 +62,11 @@ public class PathCache {
             return;
         }
 
-        try {
-            if (parkForWriteAndCheckInterrupt()) {
-                return;
-            }
-
-            CacheEntry cacheEntry = cache.get(uri);
-
-            if (cacheEntry == null) {
-                cache.put(uri, new CacheEntry(uri, newValue, maxAge));
-            }
-        } finally {
-            writing.lazySet(false);
-        }
+        cache.putIfAbsent(uri, new CacheEntry(uri, newValue, maxAge));
     }
 
     private void markForInvalidation(PathConfig newValue) {
-        PathConfig pathConfig = paths.get(newValue.getPath());
+        PathConfig pathConfig = paths.get().get(newValue.getPath());
         
         if (pathConfig != null && !pathConfig.isStatic()) {
             // invalidate the configuration so that the path config is reload based on latest changes on the server
@@ -102,10 +79,6 @@ public class PathCache {
     }
 
     public PathConfig get(String uri) {
-        if (parkForReadAndCheckInterrupt()) {
-            return null;
-        }
-
         CacheEntry cached = cache.get(uri);
 
         if (cached != null) {
@@ -116,10 +89,6 @@ public class PathCache {
     }
 
     public CacheEntry getCacheClone(String uri) {
-        if (parkForReadAndCheckInterrupt()) {
-            return null;
-        }
-
         CacheEntry cached = cache.get(uri);
         if(cached == null) {
             return null;
@@ -130,15 +99,7 @@ public class PathCache {
     }
 
     public void remove(String key) {
-        try {
-            if (parkForWriteAndCheckInterrupt()) {
-                return;
-            }
-
-            cache.remove(key);
-        } finally {
-            writing.lazySet(false);
-        }
+        cache.remove(key);
     }
 
     private PathConfig removeIfExpired(CacheEntry cached) {
@@ -149,7 +110,8 @@ public class PathCache {
         PathConfig config = cached.value();
 
         if (cached.isExpired()) {
-            remove(cached.key());
+            // only drop this very entry, a concurrent reload may already have replaced it
+            cache.remove(cached.key(), cached);
             
             if (config != null && config.getPath() != null) {
                 // also remove from pre-defined paths map so that changes on the server are properly reflected
@@ -161,30 +123,22 @@ public class PathCache {
         return config;
     }
 
-    private boolean parkForWriteAndCheckInterrupt() {
-        while (!writing.compareAndSet(false, true)) {
-            LockSupport.parkNanos(1L);
-            if (Thread.interrupted()) {
-                return true;
-            }
-        }
-        return false;
-    }
-
-    private boolean parkForReadAndCheckInterrupt() {
-        while (writing.get()) {
-            LockSupport.parkNanos(1L);
-            if (Thread.interrupted()) {
-                return true;
-            }
-        }
-        return false;
+    public void clear() {
+        cache.clear();
     }
 
     public int size() {
         return cache.size();
     }
 
+    public long hitCount() {
+        return cache.hitCount();
+    }
+
+    public long missCount() {
+        return cache.missCount();
+    }
+
     public static final class CacheEntry implements Cloneable {
 
         final String key;
@@ -0,0 +1,199 @@
+package com.creatism.keycloak.webflux.client;
+
+import lombok.extern.slf4j.Slf4j;
+import org.keycloak.representations.adapters.config.PolicyEnforcerConfig;
+import org.keycloak.representations.adapters.config.PolicyEnforcerConfig.EnforcementMode;
+import org.keycloak.representations.adapters.config.PolicyEnforcerConfig.MethodConfig;
+import org.keycloak.representations.adapters.config.PolicyEnforcerConfig.PathConfig;
+import org.keycloak.util.JsonSerialization;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Local file holding the loaded path configurations, so a restarted instance can serve before the resources
+ * are fetched again from the server.
+ * <p>
+ * A snapshot is tagged with the version of the local configuration it was built from, see
+ * {@link #version(PolicyEnforcerConfig)}. It is only restored under the same configuration, and the restored paths
+ * are reconciled with the server right after, see {@link #fingerprint(Collection)}.
+ *
+ * @author penough
+ */
+@Slf4j
+public class PathConfigSnapshot {
+
+    private final Path file;
+    private final boolean compress;
+
+    public PathConfigSnapshot(String file, boolean compress) {
+        this.file = Paths.get(file);
+        this.compress = compress;
+    }
+
+    /**
+     * Digest of the local enforcer configuration. It changes whenever the configured paths, their methods and scopes,
+     * or any other enforcement setting change, so a snapshot built for another configuration is not restored.
+     */
+    public static String version(PolicyEnforcerConfig config) {
+        try {
+            // the extensions of the subclasses do not change the loaded paths
+            byte[] json = JsonSerialization.mapper.writerFor(PolicyEnforcerConfig.class).writeValueAsBytes(config);
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(json));
+        } catch (NoSuchAlgorithmException | IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Digest of the persisted form of the paths, in their order. It changes whenever the paths would be restored
+     * differently.
+     */
+    public static String fingerprint(Collection<PathConfig> paths) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (PathConfig pathConfig : paths) {
+                digest.update(JsonSerialization.writeValueAsBytes(SnapshotPath.of(pathConfig)));
+                digest.update((byte) '\n');
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException | IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return the stored snapshot, or empty if there is none or it can not be read
+     */
+    public Mono<Snapshot> read() {
+        return Mono.fromCallable(this::readFile)
+                .subscribeOn(Schedulers.boundedElastic())
+                .onErrorResume(e -> {
+                    log.warn("Failed to read path configuration snapshot {}, ignoring it.", file, e);
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * Replaces the stored snapshot. Failures are only logged, the snapshot is an optimization.
+     */
+    public Mono<Void> write(String version, Map<String, PathConfig> paths) {
+        return Mono.<Void>fromRunnable(() -> writeFile(version, paths))
+                .subscribeOn(Schedulers.boundedElastic())
+                .onErrorResume(e -> {
+                    log.warn("Failed to write path configuration snapshot {}.", file, e);
+                    return Mono.empty();
+                });
+    }
+
+    private Snapshot readFile() throws IOException {
+        if (!Files.isRegularFile(file)) {
+            log.debug("No path configuration snapshot found at {}.", file);
+            return null;
+        }
+        SnapshotFile stored;
+        try (InputStream in = open()) {
+            stored = JsonSerialization.readValue(in, SnapshotFile.class);
+        }
+        Map<String, PathConfig> paths = new LinkedHashMap<>();
+        for (SnapshotPath path : stored.paths()) {
+            PathConfig pathConfig = path.toPathConfig();
+            paths.put(pathConfig.getPath(), pathConfig);
+        }
+        log.info("Restored {} path configurations from snapshot {}.", paths.size(), file);
+        return new Snapshot(stored.version(), paths);
+    }
+
+    private void writeFile(String version, Map<String, PathConfig> paths) {
+        List<SnapshotPath> stored = new ArrayList<>(paths.size());
+        for (PathConfig pathConfig : paths.values()) {
+            stored.add(SnapshotPath.of(pathConfig));
+        }
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            // write aside and move, a crash never leaves a truncated snapshot behind
+            Path tmp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+            try {
+                try (OutputStream out = create(tmp)) {
+                    JsonSerialization.writeValueToStream(out, new SnapshotFile(version, stored));
+                }
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        log.debug("Stored {} path configurations to snapshot {}.", stored.size(), file);
+    }
+
+    private InputStream open() throws IOException {
+        InputStream in = new BufferedInputStream(Files.newInputStream(file));
+        return compress ? new GZIPInputStream(in) : in;
+    }
+
+    private OutputStream create(Path target) throws IOException {
+        OutputStream out = new BufferedOutputStream(Files.newOutputStream(target));
+        return compress ? new GZIPOutputStream(out) : out;
+    }
+
+    public record Snapshot(String version, Map<String, PathConfig> paths) {
+    }
+
+    record SnapshotFile(String version, List<SnapshotPath> paths) {
+    }
+
+    /**
+     * the persisted part of a {@link PathConfig}, runtime state like the invalidation flag is left out
+     */
+    record SnapshotPath(String name, String type, String path, String id, List<MethodConfig> methods,
+                        List<String> scopes, EnforcementMode enforcementMode,
+                        Map<String, Map<String, Object>> claimInformationPoint, boolean staticPath) {
+
+        static SnapshotPath of(PathConfig pathConfig) {
+            return new SnapshotPath(pathConfig.getName(), pathConfig.getType(), pathConfig.getPath(), pathConfig.getId(),
+                    pathConfig.getMethods(), pathConfig.getScopes(), pathConfig.getEnforcementMode(),
+                    pathConfig.getClaimInformationPointConfig(), pathConfig.isStatic());
+        }
+
+        PathConfig toPathConfig() {
+            PathConfig pathConfig = new PathConfig();
+            pathConfig.setName(name);
+            pathConfig.setType(type);
+            pathConfig.setPath(path);
+            pathConfig.setId(id);
+            if (methods != null) {
+                pathConfig.setMethods(new ArrayList<>(methods));
+            }
+            if (scopes != null) {
+                pathConfig.setScopes(new ArrayList<>(scopes));
+            }
+            if (enforcementMode != null) {
+                pathConfig.setEnforcementMode(enforcementMode);
+            }
+            pathConfig.setClaimInformationPointConfig(claimInformationPoint);
+            pathConfig.setStatic(staticPath);
+            return pathConfig;
+        }
+    }
+}
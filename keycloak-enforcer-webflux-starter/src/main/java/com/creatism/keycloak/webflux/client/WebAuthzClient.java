@@ -11,6 +11,8 @@ import org.springframework.web.reactive.function.BodyExtractor;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+
 import static org.keycloak.constants.ServiceUrlConstants.AUTHZ_DISCOVERY_URL;
 /**
  *
@@ -18,7 +20,11 @@ import static org.keycloak.constants.ServiceUrlConstants.AUTHZ_DISCOVERY_URL;
  */
 public class WebAuthzClient {
     private WebConfiguration configuration;
-    private ServerConfiguration serverConfiguration;
+    private volatile ServerConfiguration serverConfiguration;
+    /**
+     * UMA discovery, fetched once and shared. A failed discovery is not cached so the next caller retries it
+     */
+    private final Mono<ServerConfiguration> discovery;
     private WebClient http;
     private WebTokenCallable patSupplier;
 
@@ -42,12 +48,22 @@ public class WebAuthzClient {
         configurationUrl = KeycloakUriBuilder.fromUri(configurationUrl).clone().path(AUTHZ_DISCOVERY_URL).build(config.getRealm()).toString();
         this.configuration = config;
 
-        this.http = WebClient.create();
-        this.http.get().uri(configurationUrl)
+        this.http = config.getHttpClient();
+        this.discovery = this.http.get().uri(configurationUrl)
                 .retrieve()
                 .bodyToMono(ServerConfiguration.class)
-                .map(sc -> this.serverConfiguration = sc)
-                .block();
+                .doOnNext(sc -> this.serverConfiguration = sc)
+                .cache(sc -> Duration.ofMillis(Long.MAX_VALUE), error -> Duration.ZERO, () -> Duration.ZERO);
+    }
+
+    /**
+     * Completes once the server configuration has been discovered, the resources of this client must not be
+     * created before.
+     *
+     * @return this client
+     */
+    public Mono<WebAuthzClient> ready() {
+        return discovery.thenReturn(this);
     }
 
     public WebProtectionResource protection() {
@@ -78,7 +94,7 @@ public class WebAuthzClient {
         });
     }
 
-    private WebTokenCallable createPatSupplier(String userName, String password) {
+    private synchronized WebTokenCallable createPatSupplier(String userName, String password) {
         if (patSupplier == null) {
             patSupplier = createRefreshableAccessTokenSupplier(userName, password);
         }
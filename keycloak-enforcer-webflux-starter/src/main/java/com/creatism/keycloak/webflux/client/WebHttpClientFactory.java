@@ -0,0 +1,54 @@
+package com.creatism.keycloak.webflux.client;
+
+import com.creatism.keycloak.webflux.WebPolicyEnforcerProperties;
+import io.netty.channel.ChannelOption;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+
+/**
+ * Builds the http client shared by every call to keycloak and to the claim information points, so they all
+ * draw from a single tuned connection pool.
+ *
+ * @author penough
+ */
+public class WebHttpClientFactory {
+
+    private static final String POOL_NAME = "keycloak-enforcer";
+
+    public static ConnectionProvider connectionProvider(WebPolicyEnforcerProperties.HttpClientConfig config) {
+        ConnectionProvider.Builder builder = ConnectionProvider.builder(POOL_NAME)
+                .maxConnections(config.getMaxConnections())
+                .pendingAcquireMaxCount(config.getPendingAcquireMaxCount())
+                .pendingAcquireTimeout(Duration.ofMillis(config.getPendingAcquireTimeout()))
+                .maxIdleTime(Duration.ofMillis(config.getMaxIdleTime()));
+        if (config.getMaxLifeTime() > 0) {
+            builder.maxLifeTime(Duration.ofMillis(config.getMaxLifeTime()));
+        }
+        if (config.getEvictionInterval() > 0) {
+            builder.evictInBackground(Duration.ofMillis(config.getEvictionInterval()));
+        }
+        return builder.build();
+    }
+
+    public static HttpClient httpClient(ConnectionProvider connectionProvider, WebPolicyEnforcerProperties.HttpClientConfig config) {
+        HttpClient httpClient = HttpClient.create(connectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) config.getConnectTimeout())
+                .responseTimeout(Duration.ofMillis(config.getResponseTimeout()))
+                .keepAlive(config.isKeepAlive());
+        if (config.isHttp2()) {
+            httpClient = httpClient.protocol(HttpProtocol.HTTP11, HttpProtocol.H2);
+        }
+        return httpClient;
+    }
+
+    public static WebClient webClient(HttpClient httpClient) {
+        return WebClient.builder()
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .build();
+    }
+}
@@ -3,17 +3,21 @@ package com.creatism.keycloak.webflux.client;
 import com.creatism.keycloak.webflux.WebPolicyEnforcerProperties;
 import com.creatism.keycloak.webflux.client.exceptions.NullPathConfigException;
 import com.creatism.keycloak.webflux.client.resources.WebProtectedResource;
+import com.creatism.keycloak.webflux.client.util.PathTrie;
 import com.creatism.keycloak.webflux.client.util.WebPathMatcher;
 import lombok.extern.slf4j.Slf4j;
 import org.keycloak.representations.adapters.config.PolicyEnforcerConfig;
 import org.keycloak.representations.adapters.config.PolicyEnforcerConfig.PathConfig;
 import org.keycloak.representations.idm.authorization.ResourceRepresentation;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
-import java.net.URISyntaxException;
+import java.time.Duration;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Webflux path configuration matcher
@@ -23,8 +27,31 @@ import java.util.stream.Collectors;
 @Slf4j
 public class WebPathConfigMatcher extends WebPathMatcher<PathConfig> {
 
-    private final Map<String, PathConfig> paths;
+    /**
+     * the installed paths and their compiled view, swapped as a whole and never modified in place
+     */
+    private final AtomicReference<LoadedPaths> loadedPaths;
     private final PathCache pathCache;
+    /**
+     * loads the configured paths once, a failed load is not cached so the next caller retries it
+     */
+    private final Mono<Void> bootstrap;
+    private final PathConfigSnapshot snapshot;
+    /**
+     * version of the local configuration, a snapshot of another version is not restored
+     */
+    private final String snapshotVersion;
+    private volatile boolean loaded;
+    /**
+     * whether the paths are kept up to date by the background reconciliation rather than on request
+     */
+    private final boolean synchronizing;
+    private volatile String installedFingerprint;
+    private final Disposable sync;
+    /**
+     * the bootstrap and the reconciliation of a restored snapshot, none of them may install paths once closed
+     */
+    private final Disposable.Composite background = Disposables.composite();
     private WebPolicyEnforcerProperties config;
     private WebAuthzClient authzClient;
 
@@ -38,20 +65,195 @@ public class WebPathConfigMatcher extends WebPathMatcher<PathConfig> {
 
         this.authzClient = authzClient;
 
-        this.paths = configurePaths();
-        this.pathCache = new PathCache(cacheConfig.getMaxEntries(), cacheConfig.getLifespan(), paths);
+        if (!config.getLazyLoadPaths() && config.getBootstrap().getPageSize() <= 0) {
+            throw new IllegalArgumentException("Bootstrap page size must be positive, got " + config.getBootstrap().getPageSize() + ".");
+        }
+
+        this.loadedPaths = new AtomicReference<>(new LoadedPaths(Collections.emptyMap(), PathTrie.empty(PathConfig::getPath)));
+        this.pathCache = new PathCache(cacheConfig.getMaxEntries(), cacheConfig.getLifespan(), () -> loadedPaths.get().paths());
+
+        WebPolicyEnforcerProperties.SnapshotConfig snapshotConfig = config.getSnapshot();
+        this.snapshot = snapshotConfig != null && snapshotConfig.getFile() != null
+                ? new PathConfigSnapshot(snapshotConfig.getFile(), snapshotConfig.isCompress()) : null;
+        this.snapshotVersion = snapshot != null ? PathConfigSnapshot.version(config) : null;
+
+        WebPolicyEnforcerProperties.SyncConfig syncConfig = config.getSync();
+        this.synchronizing = syncConfig != null && syncConfig.getInterval() > 0 && !config.getLazyLoadPaths();
+
+        // a restored snapshot serves right away and is reconciled with the server in background
+        this.bootstrap = restoreSnapshot()
+                .doOnNext(restored -> background.add(reconcile()
+                        .subscribe(null, error -> log.warn("Failed to reconcile the path configuration snapshot.", error))))
+                .switchIfEmpty(Mono.defer(this::loadFromServer).then(Mono.empty()))
+                .then()
+                .cache(v -> Duration.ofMillis(Long.MAX_VALUE), error -> Duration.ZERO, () -> Duration.ofMillis(Long.MAX_VALUE));
+        background.add(this.bootstrap.subscribe(null, error -> log.error("Failed to load the path configurations.", error)));
+
+        if (synchronizing) {
+            Duration interval = Duration.ofMillis(syncConfig.getInterval());
+            // a failed bootstrap is retried by the reconciliation
+            this.sync = bootstrap.onErrorResume(error -> Mono.empty())
+                    .thenMany(Flux.interval(interval, interval))
+                    .onBackpressureDrop()
+                    .concatMap(tick -> reconcile()
+                            .onErrorResume(error -> {
+                                log.warn("Failed to reconcile the path configurations with the server.", error);
+                                return Mono.empty();
+                            }), 1)
+                    .subscribe();
+        } else {
+            this.sync = null;
+        }
+    }
+
+    /**
+     * Stops the background loading and reconciliation.
+     */
+    public void close() {
+        if (sync != null) {
+            sync.dispose();
+        }
+        background.dispose();
+    }
+
+    /**
+     * Reloads the paths from the server and swaps them in if anything changed, requests keep matching the
+     * installed paths meanwhile.
+     */
+    private Mono<Void> reconcile() {
+        return authzClient.ready()
+                .map(client -> client.protection().resource())
+                .flatMap(protectedResource -> configurePaths(protectedResource)
+                        .publishOn(Schedulers.boundedElastic())
+                        .filter(configuredPaths -> {
+                            boolean changed = !PathConfigSnapshot.fingerprint(configuredPaths.values()).equals(installedFingerprint);
+                            if (!changed) {
+                                log.debug("Path configurations are up to date.");
+                            }
+                            return changed;
+                        })
+                        .flatMap(configuredPaths -> {
+                            log.info("Resources changed on the server, reloading {} paths.", configuredPaths.size());
+                            install(configuredPaths);
+                            return writeSnapshot(configuredPaths);
+                        }));
+    }
 
+    /**
+     * Completes once the configured paths have been loaded from the server.
+     */
+    public Mono<Void> ready() {
+        return bootstrap;
+    }
+
+    /**
+     * @return the restored paths, empty when there is no snapshot or it was built for another configuration
+     */
+    private Mono<Map<String, PathConfig>> restoreSnapshot() {
+        if (snapshot == null) {
+            return Mono.empty();
+        }
+        return snapshot.read()
+                .filter(restored -> {
+                    boolean current = snapshotVersion.equals(restored.version());
+                    if (!current) {
+                        log.info("Path configuration snapshot was built for another configuration, ignoring it.");
+                    }
+                    return current;
+                })
+                .map(PathConfigSnapshot.Snapshot::paths)
+                .doOnNext(this::install);
+    }
+
+    private Mono<Void> loadFromServer() {
+        return authzClient.ready()
+                .map(client -> client.protection().resource())
+                .flatMap(this::configureAndInstall)
+                .flatMap(this::writeSnapshot);
+    }
+
+    private Mono<Void> writeSnapshot(Map<String, PathConfig> configuredPaths) {
+        return snapshot != null ? snapshot.write(snapshotVersion, configuredPaths) : Mono.empty();
+    }
+
+    private Mono<Map<String, PathConfig>> configureAndInstall(WebProtectedResource protectedResource) {
+        return configurePaths(protectedResource)
+                // building the trie is cpu bound, keep it off the event loop
+                .publishOn(Schedulers.boundedElastic())
+                .doOnNext(this::install);
+    }
+
+    private void install(Map<String, PathConfig> configuredPaths) {
+        Map<String, PathConfig> installed = Collections.unmodifiableMap(new LinkedHashMap<>(configuredPaths));
+        loadedPaths.set(new LoadedPaths(installed, PathTrie.of(installed.values(), PathConfig::getPath)));
+        installedFingerprint = PathConfigSnapshot.fingerprint(configuredPaths.values());
+        // matches cached against the replaced paths are stale
+        pathCache.clear();
+        loaded = true;
 
         log.debug("Initialization complete. Path configuration:");
         if(log.isDebugEnabled()) {
-            for (PathConfig pathConfig : this.paths.values()) {
+            for (PathConfig pathConfig : configuredPaths.values()) {
                 log.debug(pathConfig.toString());
             }
         }
     }
 
+    /**
+     * Same result as {@link org.keycloak.common.util.PathMatcher#matches(String)}, but only the paths sharing
+     * a prefix with the target uri are compared.
+     */
+    @Override
+    public PathConfig matches(String targetUri) {
+        return loadedPaths.get().trie().match(targetUri);
+    }
+
+    /**
+     * @return the loaded path matching the uri, without going through the cache or to the server, or {@code null}
+     * when none matches or the paths are not all known locally yet
+     */
+    public PathConfig matchLocally(String targetUri) {
+        if (!loaded || config.getLazyLoadPaths()) {
+            return null;
+        }
+        try {
+            return matches(targetUri);
+        } catch (RuntimeException e) {
+            // ambiguous patterns are reported by the regular matching
+            return null;
+        }
+    }
+
+    /**
+     * @return the paths registered under the same parent as the given one, itself included, at most {@code limit}
+     */
+    public List<PathConfig> family(PathConfig pathConfig, int limit) {
+        String path = pathConfig.getPath();
+        if (path == null) {
+            return Collections.singletonList(pathConfig);
+        }
+        int literalEnd = path.length();
+        for (int i = 0; i < path.length(); i++) {
+            char c = path.charAt(i);
+            if (c == '{' || c == '*') {
+                literalEnd = i;
+                break;
+            }
+        }
+        // "/api/orders" and "/api/orders/{id}" are children of "/api/" and "/api/orders/" respectively
+        String parent = path.substring(0, path.lastIndexOf('/', literalEnd - 1) + 1);
+        return loadedPaths.get().trie().underPrefix(parent, limit);
+    }
+
     @Override
     public Mono<PathConfig> matchPath(String targetUri) {
+        if (!loaded && !config.getBootstrap().isLazyWarmUp()) {
+            return bootstrap.then(Mono.defer(() -> matchLoadedPath(targetUri)));
+        }
+        return matchLoadedPath(targetUri);
+    }
+
+    private Mono<PathConfig> matchLoadedPath(String targetUri) {
         return hitCache(targetUri)
                 .switchIfEmpty(loadPathsConfig(targetUri))
                 .onErrorResume(NullPathConfigException.class, ex -> Mono.empty());
@@ -74,18 +276,23 @@ public class WebPathConfigMatcher extends WebPathMatcher<PathConfig> {
     }
 
     private Mono<PathConfig> loadPathsConfig(String targetUri) {
-        PathConfig pathConfig = super.matches(targetUri);
+        PathConfig pathConfig = matches(targetUri);
         if(!needLoad(pathConfig)) {
             pathCache.put(targetUri, pathConfig);
             return pathConfig != null ? Mono.just(pathConfig) : Mono.empty();
         }
-        return authzClient.protection().resource()
-                .findByMatchingUri(targetUri)
+        return authzClient.ready()
+                .flatMap(client -> client.protection().resource().findByMatchingUri(targetUri))
                 .flatMap(ls -> resolveResource(ls, pathConfig, targetUri));
     }
 
     private Boolean needLoad(PathConfig pathConfig) {
-        return (config.getLazyLoadPaths() || config.getPathCacheConfig() != null) &&
+        if (loaded && synchronizing) {
+            // every resource is loaded and refreshed in background, the server is never queried on request
+            return false;
+        }
+        // while warming up lazily the paths not loaded yet are resolved against the server
+        return (!loaded || config.getLazyLoadPaths() || config.getPathCacheConfig() != null) &&
                 (pathConfig == null || pathConfig.isInvalidated() || pathConfig.getPath().contains("*"));
     }
 
@@ -93,7 +300,7 @@ public class WebPathConfigMatcher extends WebPathMatcher<PathConfig> {
         if (matchingResources.isEmpty()) {
             // if this config is invalidated (e.g.: due to cache expiration) we remove and return null
             if (pathConfig != null && pathConfig.isInvalidated()) {
-                paths.remove(targetUri);
+                removePath(targetUri);
                 return Mono.empty();
             }
         } else {
@@ -109,7 +316,7 @@ public class WebPathConfigMatcher extends WebPathMatcher<PathConfig> {
                 methodConfig = pathConfig.getMethods();
                 isStatic = pathConfig.isStatic();
             } else {
-                for (PathConfig existingPath : paths.values()) {
+                for (PathConfig existingPath : loadedPaths.get().paths().values()) {
                     if (targetResource.getId().equals(existingPath.getId())
                             && existingPath.isStatic()
                             && !PolicyEnforcerConfig.EnforcementMode.DISABLED.equals(existingPath.getEnforcementMode())) {
@@ -134,10 +341,29 @@ public class WebPathConfigMatcher extends WebPathMatcher<PathConfig> {
         pathCache.put(targetUri, pathConfig);
         return Mono.just(pathConfig);
     }
+    public PathCache getPathCache() {
+        return pathCache;
+    }
+
     public void removeFromCache(String pathConfig) {
         pathCache.remove(pathConfig);
     }
 
+    private void removePath(String path) {
+        loadedPaths.updateAndGet(loaded -> {
+            PathConfig removed = loaded.paths().get(path);
+            if (removed == null) {
+                return loaded;
+            }
+            Map<String, PathConfig> remaining = new LinkedHashMap<>(loaded.paths());
+            remaining.remove(path);
+            return new LoadedPaths(Collections.unmodifiableMap(remaining), loaded.trie().without(removed));
+        });
+    }
+
+    private record LoadedPaths(Map<String, PathConfig> paths, PathTrie<PathConfig> trie) {
+    }
+
     @Override
     protected String getPath(PathConfig entry) {
         return entry.getPath();
@@ -145,11 +371,10 @@ public class WebPathConfigMatcher extends WebPathMatcher<PathConfig> {
 
     @Override
     protected Collection<PathConfig> getPaths() {
-        return paths.values();
+        return loadedPaths.get().paths().values();
     }
 
-    private Map<String, PathConfig> configurePaths() {
-        WebProtectedResource protectedResource = this.authzClient.protection().resource();
+    private Mono<Map<String, PathConfig>> configurePaths(WebProtectedResource protectedResource) {
         boolean loadPathsFromServer = !config.getLazyLoadPaths();
 
         for (PathConfig pathConfig : config.getPaths()) {
@@ -161,96 +386,107 @@ public class WebPathConfigMatcher extends WebPathMatcher<PathConfig> {
 
         if (loadPathsFromServer) {
             log.info("No path provided in configuration.");
-            Map<String, PathConfig> paths = configureAllPathsForResourceServer(protectedResource).block();
-
-            paths.putAll(configureDefinedPaths(protectedResource, config));
-
-            return paths;
+            return configureAllPathsForResourceServer(protectedResource)
+                    .flatMap(paths -> configureDefinedPaths(protectedResource, config)
+                            .map(definedPaths -> {
+                                paths.putAll(definedPaths);
+                                return paths;
+                            }));
         } else {
             log.info("Paths provided in configuration.");
             return configureDefinedPaths(protectedResource, config);
         }
     }
 
-    private Map<String, PathConfig> configureDefinedPaths(WebProtectedResource protectedResource, PolicyEnforcerConfig enforcerConfig) {
-        Map<String, PathConfig> paths = Collections.synchronizedMap(new LinkedHashMap<String, PathConfig>());
-        Flux.fromIterable(enforcerConfig.getPaths())
-                .map(pathConfig -> {
-                    ResourceRepresentation resource;
-                    String resourceName = pathConfig.getName();
-                    String path = pathConfig.getPath();
-                    Mono<ResourceRepresentation> tmpMono;
+    private Mono<Map<String, PathConfig>> configureDefinedPaths(WebProtectedResource protectedResource, PolicyEnforcerConfig enforcerConfig) {
+        // lookups run concurrently, merging follows the configuration order. Every load resolves and merges its own
+        // copies, the configured paths stay as configured
+        return Flux.fromIterable(enforcerConfig.getPaths())
+                .map(WebPathConfigMatcher::copy)
+                .flatMapSequential(pathConfig -> resolveDefinedPath(protectedResource, pathConfig), config.getBootstrap().getConcurrency())
+                .collect(LinkedHashMap::new, this::mergeDefinedPath);
+    }
+
+    private Mono<PathConfig> resolveDefinedPath(WebProtectedResource protectedResource, PathConfig pathConfig) {
+        String resourceName = pathConfig.getName();
+        String path = pathConfig.getPath();
+        Mono<ResourceRepresentation> resource;
+        if (resourceName != null) {
+            log.debug("Trying to find resource with name {} for path {}.", resourceName, path);
+            resource = protectedResource.findByName(resourceName);
+        } else {
+            log.debug("Trying to find resource with uri {} for path {}.", path, path);
+            resource = protectedResource.findByUri(path)
+                    .flatMap(ls -> ls.isEmpty() ? protectedResource.findByMatchingUri(path) : Mono.just(ls))
+                    .flatMap(ls -> {
+                        if (ls.size() > 1) {
+                            return Mono.error(new RuntimeException("Multiple resources found with the same uri"));
+                        }
+                        return Mono.justOrEmpty(ls.stream().findFirst());
+                    });
+        }
+        return resource
+                .doOnNext(res -> {
+                    pathConfig.setId(res.getId());
                     if (resourceName != null) {
-                        log.debug("Trying to find resource with name {} for path {}}.", resourceName, path);
-                        tmpMono = protectedResource.findByName(resourceName);
-                    } else {
-                        log.debug("Trying to find resource with uri {} for path {}.", path, path);
-                        tmpMono = protectedResource.findByUri(path)
-                                .switchIfEmpty(protectedResource.findByMatchingUri(path))
-                                .map(ls -> {
-                                    if(ls.size() == 1) {
-                                        return ls.get(0);
-                                    }
-                                    throw new RuntimeException("Multiple resources found with the same uri");
-                                });
+                        pathConfig.setStatic(true);
                     }
-                    tmpMono.map(res -> {
-                                pathConfig.setId(res.getId());
-                                if (resourceName != null) {
-                                    pathConfig.setStatic(true);
-                                }
-                                return res;
-                            })
-                            .block();
+                })
+                .then(Mono.fromCallable(() -> {
                     if (PolicyEnforcerConfig.EnforcementMode.DISABLED.equals(pathConfig.getEnforcementMode())) {
                         pathConfig.setStatic(true);
                     }
+                    return pathConfig;
+                }));
+    }
 
-                    PathConfig existingPath = null;
+    private void mergeDefinedPath(Map<String, PathConfig> paths, PathConfig pathConfig) {
+        PathConfig existingPath = paths.get(pathConfig.getPath());
 
-                    for (PathConfig current : paths.values()) {
-                        if (current.getPath().equals(pathConfig.getPath())) {
-                            existingPath = current;
-                            break;
-                        }
-                    }
+        if (existingPath == null) {
+            paths.put(pathConfig.getPath(), pathConfig);
+        } else {
+            existingPath.getMethods().addAll(pathConfig.getMethods());
+            existingPath.getScopes().addAll(pathConfig.getScopes());
+        }
+    }
 
-                    if (existingPath == null) {
-                        paths.put(pathConfig.getPath(), pathConfig);
-                    } else {
-                        existingPath.getMethods().addAll(pathConfig.getMethods());
-                        existingPath.getScopes().addAll(pathConfig.getScopes());
-                    }
-                    return pathConfig;
-                }).collect(Collectors.toList()).block();
-        return paths;
+    private static PathConfig copy(PathConfig pathConfig) {
+        PathConfig copy = new PathConfig();
+        copy.setName(pathConfig.getName());
+        copy.setType(pathConfig.getType());
+        copy.setPath(pathConfig.getPath());
+        copy.setId(pathConfig.getId());
+        List<PolicyEnforcerConfig.MethodConfig> methods = new ArrayList<>();
+        if (pathConfig.getMethods() != null) {
+            for (PolicyEnforcerConfig.MethodConfig methodConfig : pathConfig.getMethods()) {
+                PolicyEnforcerConfig.MethodConfig method = new PolicyEnforcerConfig.MethodConfig();
+                method.setMethod(methodConfig.getMethod());
+                method.setScopes(methodConfig.getScopes() != null ? new ArrayList<>(methodConfig.getScopes()) : new ArrayList<>());
+                method.setScopesEnforcementMode(methodConfig.getScopesEnforcementMode());
+                methods.add(method);
+            }
+        }
+        copy.setMethods(methods);
+        copy.setScopes(pathConfig.getScopes() != null ? new ArrayList<>(pathConfig.getScopes()) : new ArrayList<>());
+        copy.setEnforcementMode(pathConfig.getEnforcementMode());
+        copy.setClaimInformationPointConfig(pathConfig.getClaimInformationPointConfig());
+        copy.setStatic(pathConfig.isStatic());
+        return copy;
     }
 
     private Mono<Map<String, PathConfig>> configureAllPathsForResourceServer(WebProtectedResource protectedResource) {
         log.info("Querying the server for all resources associated with this application.");
 
-
         if (!config.getLazyLoadPaths()) {
-            return protectedResource.findAll()
-                    .map(ls -> {
-                        Map<String, PathConfig> paths = Collections.synchronizedMap(new HashMap<String, PathConfig>());
-                        for (String id : ls) {
-                            try {
-                                protectedResource.findById(id)
-                                        .map(des -> {
-                                            for(PathConfig pathConfig : PathConfig.createPathConfigs(des)) {
-                                                paths.put(pathConfig.getPath(), pathConfig);
-                                            }
-                                            return des;
-                                        }).block();
-                            } catch (URISyntaxException e) {
-                                throw new RuntimeException(e);
-                            }
+            return protectedResource.findAll(config.getBootstrap().getPageSize())
+                    .collect(LinkedHashMap::new, (paths, resource) -> {
+                        for (PathConfig pathConfig : PathConfig.createPathConfigs(resource)) {
+                            paths.put(pathConfig.getPath(), pathConfig);
                         }
-                        return paths;
                     });
         }
 
-        return Mono.just(Collections.synchronizedMap(new HashMap<String, PathConfig>()));
+        return Mono.just(new LinkedHashMap<>());
     }
 }
@@ -116,7 +116,7 @@ public class WebAuthorizationResource {
                     }
                 }
 
-                form.put("permission", Arrays.asList(value.toString()));
+                form.add("permission", value.toString());
             }
         }
 
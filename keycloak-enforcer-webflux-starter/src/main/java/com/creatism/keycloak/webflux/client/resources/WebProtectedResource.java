@@ -8,6 +8,7 @@ import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpHeaders;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.net.URI;
@@ -15,6 +16,8 @@ import java.net.URISyntaxException;
 import java.net.URLEncoder;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 /**
  *
  * @author penough
@@ -111,6 +114,46 @@ public class WebProtectedResource {
                         .bodyToMono(String[].class));
     }
 
+    /**
+     * Query the server for all resources with their details, one page after the other. A page is only requested
+     * once the previous one is consumed and its resources are decoded as they arrive.
+     *
+     * @param pageSize the number of resources per request
+     * @return the resource representations
+     */
+    public Flux<ResourceRepresentation> findAll(int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive, got " + pageSize + ".");
+        }
+        AtomicBoolean exhausted = new AtomicBoolean();
+        return Flux.range(0, Integer.MAX_VALUE / pageSize)
+                .takeWhile(page -> !exhausted.get())
+                .concatMap(page -> Flux.defer(() -> {
+                    if (exhausted.get()) {
+                        return Flux.empty();
+                    }
+                    AtomicInteger count = new AtomicInteger();
+                    return findPage(page * pageSize, pageSize)
+                            .doOnNext(resource -> count.incrementAndGet())
+                            .doOnComplete(() -> {
+                                // a short page is the last one
+                                if (count.get() < pageSize) {
+                                    exhausted.set(true);
+                                }
+                            });
+                }), 1);
+    }
+
+    private Flux<ResourceRepresentation> findPage(int firstResult, int maxResult) {
+        URI qryUri = buildUriWithQryParams(null, null, null, null, null, null, false, false, true, firstResult, maxResult);
+
+        return pat.call()
+                .flatMapMany(token -> http.get().uri(qryUri)
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+                        .retrieve()
+                        .bodyToFlux(ResourceRepresentation.class));
+    }
+
     /**
      * Query the server for any resource with the matching arguments.
      *
@@ -0,0 +1,373 @@
+package com.creatism.keycloak.webflux.client.util;
+
+import org.keycloak.common.util.PathMatcher;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Immutable radix tree of path patterns, indexed by their literal prefix (everything before the first
+ * {@code '{'} or {@code '*'}).
+ * <p>
+ * {@link PathMatcher} only selects an entry whose literal prefix is a prefix of the target uri, whose prefix is
+ * the target plus the {@code '/'} of a trailing wildcard, or which declares a {@code /*.suffix}. A lookup therefore
+ * walks the target once, collects those candidates in registration order and runs the upstream algorithm over
+ * them only, so the result is the same as matching against every configured path.
+ * <p>
+ * Updates copy the nodes along the changed branch and return a new trie, readers keep the instance they started with.
+ *
+ * @author penough
+ */
+public final class PathTrie<P> {
+
+    private static final String SUFFIX_PATTERN = "/*.";
+
+    private final Function<P, String> pathOf;
+    private final Node<P> root;
+    private final Entry<P>[] suffixEntries;
+    private final long nextOrdinal;
+    private final int size;
+
+    private PathTrie(Function<P, String> pathOf, Node<P> root, Entry<P>[] suffixEntries, long nextOrdinal, int size) {
+        this.pathOf = pathOf;
+        this.root = root;
+        this.suffixEntries = suffixEntries;
+        this.nextOrdinal = nextOrdinal;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <P> PathTrie<P> empty(Function<P, String> pathOf) {
+        return new PathTrie<>(pathOf, new Node<>("", new Node[0], new Entry[0]), new Entry[0], 0, 0);
+    }
+
+    /**
+     * @param entries the entries in the order {@link PathMatcher} should consider them
+     */
+    public static <P> PathTrie<P> of(Collection<P> entries, Function<P, String> pathOf) {
+        PathTrie<P> trie = empty(pathOf);
+        for (P entry : entries) {
+            trie = trie.with(entry);
+        }
+        return trie;
+    }
+
+    /**
+     * @return a trie where the entry is matched after every entry already present
+     */
+    public PathTrie<P> with(P value) {
+        String path = pathOf.apply(value);
+        if (path == null) {
+            return this;
+        }
+        Entry<P> entry = new Entry<>(value, nextOrdinal);
+        if (path.contains(SUFFIX_PATTERN)) {
+            return new PathTrie<>(pathOf, root, append(suffixEntries, entry), nextOrdinal + 1, size + 1);
+        }
+        return new PathTrie<>(pathOf, insert(root, literalPrefix(path), 0, entry), suffixEntries, nextOrdinal + 1, size + 1);
+    }
+
+    /**
+     * @return a trie without the given entry (compared by identity), or this trie if it is not present
+     */
+    public PathTrie<P> without(P value) {
+        String path = pathOf.apply(value);
+        if (path == null) {
+            return this;
+        }
+        if (path.contains(SUFFIX_PATTERN)) {
+            Entry<P>[] remaining = removeEntry(suffixEntries, value);
+            return remaining == suffixEntries ? this : new PathTrie<>(pathOf, root, remaining, nextOrdinal, size - 1);
+        }
+        Node<P> updated = remove(root, literalPrefix(path), 0, value);
+        if (updated == root) {
+            return this;
+        }
+        return new PathTrie<>(pathOf, updated != null ? updated : empty(pathOf).root, suffixEntries, nextOrdinal, size - 1);
+    }
+
+    /**
+     * Resolves the target uri exactly like {@link PathMatcher#matches(String)} over all entries would.
+     */
+    public P match(String targetUri) {
+        List<P> candidates = candidates(targetUri);
+        if (candidates.isEmpty()) {
+            return null;
+        }
+        return new PathMatcher<P>() {
+            @Override
+            protected String getPath(P entry) {
+                return pathOf.apply(entry);
+            }
+
+            @Override
+            protected Collection<P> getPaths() {
+                return candidates;
+            }
+        }.matches(targetUri);
+    }
+
+    /**
+     * @return every entry that may match the target uri, in registration order
+     */
+    public List<P> candidates(String targetUri) {
+        List<Entry<P>> found = new ArrayList<>();
+        Node<P> node = root;
+        int pos = 0;
+        int length = targetUri.length();
+
+        while (true) {
+            addAll(found, node.entries);
+            if (pos == length) {
+                // "/foo/*" also matches "/foo"
+                for (Node<P> child : node.children) {
+                    if (child.label.length() == 1) {
+                        addAll(found, child.entries);
+                    }
+                }
+                break;
+            }
+            Node<P> child = node.child(targetUri.charAt(pos));
+            if (child == null) {
+                break;
+            }
+            String label = child.label;
+            int remaining = length - pos;
+            if (label.length() <= remaining && targetUri.startsWith(label, pos)) {
+                node = child;
+                pos += label.length();
+                continue;
+            }
+            if (label.length() == remaining + 1 && label.regionMatches(0, targetUri, pos, remaining)) {
+                addAll(found, child.entries);
+            }
+            break;
+        }
+        addAll(found, suffixEntries);
+
+        if (found.size() > 1) {
+            found.sort(Comparator.comparingLong(Entry::ordinal));
+        }
+        List<P> values = new ArrayList<>(found.size());
+        for (Entry<P> entry : found) {
+            values.add(entry.value());
+        }
+        return values;
+    }
+
+    /**
+     * @return at most {@code limit} entries whose literal prefix starts with the given prefix, in registration order.
+     * Suffix patterns such as {@code /*.js} belong to no prefix and are never returned
+     */
+    public List<P> underPrefix(String prefix, int limit) {
+        Node<P> node = root;
+        int pos = 0;
+        while (pos < prefix.length()) {
+            Node<P> child = node.child(prefix.charAt(pos));
+            if (child == null) {
+                return Collections.emptyList();
+            }
+            int remaining = prefix.length() - pos;
+            if (child.label.length() > remaining) {
+                // the prefix ends inside the edge, the whole subtree is below it
+                if (!child.label.startsWith(prefix.substring(pos))) {
+                    return Collections.emptyList();
+                }
+                node = child;
+                break;
+            }
+            if (!prefix.startsWith(child.label, pos)) {
+                return Collections.emptyList();
+            }
+            node = child;
+            pos += child.label.length();
+        }
+        List<Entry<P>> found = new ArrayList<>();
+        collect(node, found);
+        found.sort(Comparator.comparingLong(Entry::ordinal));
+        List<P> values = new ArrayList<>(Math.min(found.size(), limit));
+        for (int i = 0; i < found.size() && values.size() < limit; i++) {
+            values.add(found.get(i).value());
+        }
+        return values;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private static <P> void collect(Node<P> node, List<Entry<P>> target) {
+        addAll(target, node.entries);
+        for (Node<P> child : node.children) {
+            collect(child, target);
+        }
+    }
+
+    private static String literalPrefix(String path) {
+        for (int i = 0; i < path.length(); i++) {
+            char c = path.charAt(i);
+            if (c == '{' || c == '*') {
+                return path.substring(0, i);
+            }
+        }
+        return path;
+    }
+
+    private static <P> Node<P> insert(Node<P> node, String key, int pos, Entry<P> entry) {
+        if (pos == key.length()) {
+            return new Node<>(node.label, node.children, append(node.entries, entry));
+        }
+        int index = node.childIndex(key.charAt(pos));
+        if (index < 0) {
+            @SuppressWarnings("unchecked")
+            Node<P> leaf = new Node<>(key.substring(pos), new Node[0], new Entry[]{entry});
+            return node.withChild(-index - 1, leaf, false);
+        }
+        Node<P> child = node.children[index];
+        int common = commonPrefixLength(child.label, key, pos);
+        if (common == child.label.length()) {
+            return node.withChild(index, insert(child, key, pos + common, entry), true);
+        }
+        // split the edge at the point where the keys diverge
+        @SuppressWarnings("unchecked")
+        Node<P> middle = new Node<>(child.label.substring(0, common),
+                new Node[]{new Node<>(child.label.substring(common), child.children, child.entries)}, new Entry[0]);
+        return node.withChild(index, insert(middle, key, pos + common, entry), true);
+    }
+
+    /**
+     * @return the updated node, {@code null} if it became empty, or the same node if the entry was not found
+     */
+    private static <P> Node<P> remove(Node<P> node, String key, int pos, P value) {
+        if (pos == key.length()) {
+            Entry<P>[] entries = removeEntry(node.entries, value);
+            if (entries == node.entries) {
+                return node;
+            }
+            return compact(new Node<>(node.label, node.children, entries));
+        }
+        int index = node.childIndex(key.charAt(pos));
+        if (index < 0) {
+            return node;
+        }
+        Node<P> child = node.children[index];
+        if (!key.startsWith(child.label, pos)) {
+            return node;
+        }
+        Node<P> updated = remove(child, key, pos + child.label.length(), value);
+        if (updated == child) {
+            return node;
+        }
+        Node<P> result = updated == null ? node.withoutChild(index) : node.withChild(index, updated, true);
+        return compact(result);
+    }
+
+    private static <P> Node<P> compact(Node<P> node) {
+        if (node.entries.length > 0 || node.label.isEmpty()) {
+            return node;
+        }
+        if (node.children.length == 0) {
+            return null;
+        }
+        if (node.children.length == 1) {
+            Node<P> child = node.children[0];
+            return new Node<>(node.label + child.label, child.children, child.entries);
+        }
+        return node;
+    }
+
+    private static int commonPrefixLength(String label, String key, int pos) {
+        int max = Math.min(label.length(), key.length() - pos);
+        int i = 0;
+        while (i < max && label.charAt(i) == key.charAt(pos + i)) {
+            i++;
+        }
+        return i;
+    }
+
+    private static <P> void addAll(List<Entry<P>> target, Entry<P>[] entries) {
+        for (Entry<P> entry : entries) {
+            target.add(entry);
+        }
+    }
+
+    private static <P> Entry<P>[] append(Entry<P>[] entries, Entry<P> entry) {
+        Entry<P>[] copy = Arrays.copyOf(entries, entries.length + 1);
+        copy[entries.length] = entry;
+        return copy;
+    }
+
+    private static <P> Entry<P>[] removeEntry(Entry<P>[] entries, P value) {
+        for (int i = 0; i < entries.length; i++) {
+            if (entries[i].value() == value) {
+                Entry<P>[] copy = Arrays.copyOf(entries, entries.length - 1);
+                System.arraycopy(entries, i + 1, copy, i, entries.length - i - 1);
+                return copy;
+            }
+        }
+        return entries;
+    }
+
+    private record Entry<P>(P value, long ordinal) {
+    }
+
+    private static final class Node<P> {
+        final String label;
+        /**
+         * sorted by the first character of their label
+         */
+        final Node<P>[] children;
+        final Entry<P>[] entries;
+
+        Node(String label, Node<P>[] children, Entry<P>[] entries) {
+            this.label = label;
+            this.children = children;
+            this.entries = entries;
+        }
+
+        Node<P> child(char c) {
+            int index = childIndex(c);
+            return index < 0 ? null : children[index];
+        }
+
+        int childIndex(char c) {
+            int low = 0;
+            int high = children.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                char midChar = children[mid].label.charAt(0);
+                if (midChar < c) {
+                    low = mid + 1;
+                } else if (midChar > c) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(low + 1);
+        }
+
+        Node<P> withChild(int index, Node<P> child, boolean replace) {
+            Node<P>[] copy;
+            if (replace) {
+                copy = children.clone();
+            } else {
+                copy = Arrays.copyOf(children, children.length + 1);
+                System.arraycopy(children, index, copy, index + 1, children.length - index);
+            }
+            copy[index] = child;
+            return new Node<>(label, copy, entries);
+        }
+
+        Node<P> withoutChild(int index) {
+            Node<P>[] copy = Arrays.copyOf(children, children.length - 1);
+            System.arraycopy(children, index + 1, copy, index, children.length - index - 1);
+            return new Node<>(label, copy, entries);
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.creatism.keycloak.webflux.client.util;
+
+import org.keycloak.common.util.Time;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * A bounded concurrent cache with approximate LRU eviction and per-entry expiration.
+ * <p>
+ * Keys are spread over independent segments backed by {@link ConcurrentHashMap}, so reads never lock and
+ * only record the access time on the entry. A segment is locked just when an insertion pushes it over its
+ * capacity; the thread holding the lock evicts the overflow by sampling, while concurrent writers simply skip
+ * eviction instead of waiting for it.
+ * <p>
+ * Each eviction looks at a few entries taken from a hand that keeps circling the segment and removes the first
+ * expired one, or else the least recently accessed one, so its cost does not depend on the size of the cache.
+ *
+ * @author penough
+ */
+public class SegmentedLruCache<K, V> {
+
+    private static final int MAX_SEGMENTS = 16;
+    private static final int MIN_SEGMENT_CAPACITY = 32;
+    /**
+     * entries compared to pick a victim
+     */
+    private static final int EVICTION_SAMPLES = 8;
+
+    private final Segment<K, V>[] segments;
+    private final int segmentMask;
+    private final long maxAge;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Creates a new instance.
+     *
+     * @param maxEntries the maximum number of entries to keep in the cache
+     * @param maxAge the time in milliseconds that an entry can stay in the cache. If {@code -1}, entries never expire
+     */
+    @SuppressWarnings("unchecked")
+    public SegmentedLruCache(int maxEntries, long maxAge) {
+        int count = 1;
+        while (count < MAX_SEGMENTS && maxEntries / (count << 1) >= MIN_SEGMENT_CAPACITY) {
+            count <<= 1;
+        }
+        int capacity = Math.max(0, maxEntries) / count;
+        int remainder = Math.max(0, maxEntries) % count;
+        this.segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            // the capacities add up to maxEntries exactly
+            segments[i] = new Segment<>(i < remainder ? capacity + 1 : capacity);
+        }
+        this.segmentMask = count - 1;
+        this.maxAge = maxAge;
+    }
+
+    public V get(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        Node<V> node = segment.map.get(key);
+        if (node == null) {
+            misses.increment();
+            return null;
+        }
+        if (node.isExpired(Time.currentTimeMillis())) {
+            segment.map.remove(key, node);
+            misses.increment();
+            return null;
+        }
+        node.accessTime = System.nanoTime();
+        hits.increment();
+        return node.value;
+    }
+
+    public boolean containsKey(K key) {
+        return get(key) != null;
+    }
+
+    public void put(K key, V value) {
+        put(key, value, expirationOf(maxAge));
+    }
+
+    /**
+     * @param expiration the absolute time in milliseconds after which the entry expires. If {@code -1}, the entry never expires
+     */
+    public void put(K key, V value, long expiration) {
+        Segment<K, V> segment = segmentFor(key);
+        segment.map.put(key, new Node<>(value, expiration));
+        segment.evictIfNecessary();
+    }
+
+    /**
+     * @return the live value already associated with the key, or {@code null} if the given value was stored
+     */
+    public V putIfAbsent(K key, V value) {
+        Segment<K, V> segment = segmentFor(key);
+        Node<V> created = new Node<>(value, expirationOf(maxAge));
+        long now = Time.currentTimeMillis();
+        Node<V> current = segment.map.compute(key, (k, existing) ->
+                existing == null || existing.isExpired(now) ? created : existing);
+        if (current != created) {
+            current.accessTime = System.nanoTime();
+            return current.value;
+        }
+        segment.evictIfNecessary();
+        return null;
+    }
+
+    public V remove(K key) {
+        Node<V> node = segmentFor(key).map.remove(key);
+        return node != null ? node.value : null;
+    }
+
+    /**
+     * Removes the entry only if it is still mapped to the given value, so a concurrently refreshed entry survives.
+     */
+    public boolean remove(K key, V value) {
+        Segment<K, V> segment = segmentFor(key);
+        Node<V> node = segment.map.get(key);
+        return node != null && node.value == value && segment.map.remove(key, node);
+    }
+
+    /**
+     * Removes every entry whose key matches, scanning the whole cache. Meant for rare invalidations only.
+     */
+    public void removeIf(Predicate<K> filter) {
+        for (Segment<K, V> segment : segments) {
+            segment.map.keySet().removeIf(filter);
+        }
+    }
+
+    public void clear() {
+        for (Segment<K, V> segment : segments) {
+            segment.map.clear();
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            size += segment.map.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return the number of {@link #get(Object)} calls that returned a live entry
+     */
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of {@link #get(Object)} calls that found no entry or an expired one
+     */
+    public long missCount() {
+        return misses.sum();
+    }
+
+    private long expirationOf(long maxAge) {
+        return maxAge == -1 ? -1 : Time.currentTimeMillis() + maxAge;
+    }
+
+    private Segment<K, V> segmentFor(K key) {
+        int h = key.hashCode();
+        return segments[(h ^ (h >>> 16)) & segmentMask];
+    }
+
+    private static final class Node<V> {
+        final V value;
+        final long expiration;
+        volatile long accessTime;
+
+        Node(V value, long expiration) {
+            this.value = value;
+            this.expiration = expiration;
+            this.accessTime = System.nanoTime();
+        }
+
+        boolean isExpired(long now) {
+            return expiration != -1 && now > expiration;
+        }
+    }
+
+    private static final class Segment<K, V> {
+        final ConcurrentHashMap<K, Node<V>> map = new ConcurrentHashMap<>();
+        final ReentrantLock evictionLock = new ReentrantLock();
+        final int capacity;
+        private Iterator<Map.Entry<K, Node<V>>> hand;
+
+        Segment(int capacity) {
+            this.capacity = capacity;
+        }
+
+        void evictIfNecessary() {
+            int overflow = map.size() - capacity;
+            if (overflow <= 0 || !evictionLock.tryLock()) {
+                return;
+            }
+            try {
+                long now = Time.currentTimeMillis();
+                // writers racing with us leave their own overflow to the next insertion
+                for (int i = 0; i < overflow && map.size() > capacity; i++) {
+                    evictOne(now);
+                }
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+
+        private void evictOne(long now) {
+            Map.Entry<K, Node<V>> victim = null;
+            for (int i = 0; i < EVICTION_SAMPLES; i++) {
+                Map.Entry<K, Node<V>> sample = nextSample();
+                if (sample == null) {
+                    break;
+                }
+                if (sample.getValue().isExpired(now)) {
+                    victim = sample;
+                    break;
+                }
+                if (victim == null || sample.getValue().accessTime < victim.getValue().accessTime) {
+                    victim = sample;
+                }
+            }
+            if (victim != null) {
+                map.remove(victim.getKey(), victim.getValue());
+            }
+        }
+
+        /**
+         * guarded by the eviction lock, the weakly consistent iterator tolerates concurrent updates
+         */
+        private Map.Entry<K, Node<V>> nextSample() {
+            if (hand == null || !hand.hasNext()) {
+                hand = map.entrySet().iterator();
+                if (!hand.hasNext()) {
+                    return null;
+                }
+            }
+            return hand.next();
+        }
+    }
+}
@@ -25,7 +25,7 @@ import reactor.core.publisher.Mono;
 public abstract class WebPathMatcher<P> extends PathMatcher<P> {
 
     public Mono<P> matchPath(String targetUri) {
-        return Mono.just(super.matches(targetUri));
+        return Mono.justOrEmpty(matches(targetUri));
     }
 }
 
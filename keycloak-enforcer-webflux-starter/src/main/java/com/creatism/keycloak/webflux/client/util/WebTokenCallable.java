@@ -1,12 +1,12 @@
 package com.creatism.keycloak.webflux.client.util;
 
+import com.creatism.keycloak.webflux.adapter.authorization.util.JsonUtils;
 import com.creatism.keycloak.webflux.client.WebConfiguration;
 import lombok.extern.slf4j.Slf4j;
 import org.keycloak.OAuth2Constants;
 import org.keycloak.authorization.client.representation.ServerConfiguration;
 import org.keycloak.common.util.Time;
 import org.keycloak.jose.jws.JWSInput;
-import org.keycloak.jose.jws.JWSInputException;
 import org.keycloak.representations.AccessToken;
 import org.keycloak.representations.AccessTokenResponse;
 import org.keycloak.representations.RefreshToken;
@@ -19,21 +19,26 @@ import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Mono;
 
-import java.io.IOException;
 import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Slf4j
 public class WebTokenCallable implements Callable<Mono<String>> {
+    private static final int REFRESH_AHEAD_DIVISOR = 5;
     private final String userName;
     private final String password;
     private final String scope;
     private final WebClient http;
     private final WebConfiguration configuration;
     private final ServerConfiguration serverConfiguration;
-    private AccessTokenResponse tokenResponse;
+    private volatile IssuedTokens tokens;
+    /**
+     * the token request every concurrent caller shares, {@code null} when none is running
+     */
+    private final AtomicReference<Mono<IssuedTokens>> pendingTokens = new AtomicReference<>();
 
     public WebTokenCallable(String userName, String password, String scope, WebClient http, WebConfiguration configuration,
                          ServerConfiguration serverConfiguration) {
@@ -56,37 +61,79 @@ public class WebTokenCallable implements Callable<Mono<String>> {
 
     @Override
     public Mono<String> call() {
-        if(tokenResponse != null) {
-            return Mono.just(tokenResponse)
-                    .map(atr -> validateRawAccessToken(atr.getToken()))
-                    .switchIfEmpty(tryRefreshToken()
-                            .map(rr -> {
-                                tokenResponse = rr;
-                                return tokenResponse.getToken();
-                            }));
+        IssuedTokens current = tokens;
+        if (current != null && isUsable(current.accessToken())) {
+            if (current.isRefreshDue()) {
+                refreshInBackground();
+            }
+            return Mono.just(current.response().getToken());
+        }
+        return obtainSharedTokens().map(issued -> issued.response().getToken());
+    }
+
+    /**
+     * Joins the running token request or starts a new one, so concurrent callers only trigger a single grant.
+     */
+    private Mono<IssuedTokens> obtainSharedTokens() {
+        while (true) {
+            Mono<IssuedTokens> pending = pendingTokens.get();
+            if (pending != null) {
+                return pending;
+            }
+            Mono<IssuedTokens> created = Mono.defer(this::tryRefreshToken)
+                    .map(this::issue)
+                    .doOnNext(issued -> tokens = issued)
+                    .doFinally(signal -> pendingTokens.set(null))
+                    .cache();
+            if (pendingTokens.compareAndSet(null, created)) {
+                return created;
+            }
         }
-        return obtainTokens()
-                .map(atr -> atr.getToken());
     }
 
+    private void refreshInBackground() {
+        if (pendingTokens.get() != null) {
+            return;
+        }
+        log.debug("Access token is close to expire, refreshing it in background.");
+        obtainSharedTokens().subscribe(issued -> { }, error -> log.warn("Failed to refresh access token in background", error));
+    }
 
-    private String validateRawAccessToken(String rawAccessToken) {
+    private IssuedTokens issue(AccessTokenResponse response) {
+        AccessToken accessToken;
         try {
-            AccessToken accessToken = JsonSerialization.readValue(new JWSInput(rawAccessToken).getContent(), AccessToken.class);
-            if (accessToken.isActive() && this.isTokenTimeToLiveSufficient(accessToken)) {
-                return rawAccessToken;
-            } else {
-                log.debug("Access token is expired.");
-            }
-        } catch (JWSInputException | IOException e) {
+            accessToken = JsonUtils.asAccessToken(response.getToken());
+        } catch (RuntimeException e) {
             clearTokens();
             throw new RuntimeException("Failed to parse access token", e);
         }
-        return null;
+        return new IssuedTokens(response, accessToken, refreshDueTime(accessToken));
+    }
+
+    private boolean isUsable(AccessToken accessToken) {
+        if (accessToken.isActive() && this.isTokenTimeToLiveSufficient(accessToken)) {
+            return true;
+        }
+        log.debug("Access token is expired.");
+        return false;
+    }
+
+    /**
+     * @return the time in seconds after which a new token is requested ahead of time, once the last
+     * {@link #REFRESH_AHEAD_DIVISOR}th of the token lifetime before its minimum time to live starts
+     */
+    private long refreshDueTime(AccessToken accessToken) {
+        Long exp = accessToken.getExp();
+        Long iat = accessToken.getIat();
+        if (exp == null || iat == null) {
+            return Long.MAX_VALUE;
+        }
+        return exp - getWebConfiguration().getTokenMinimumTimeToLive() - (exp - iat) / REFRESH_AHEAD_DIVISOR;
     }
 
     private Mono<AccessTokenResponse> tryRefreshToken() {
-        String rawRefreshToken = tokenResponse.getRefreshToken();
+        IssuedTokens current = tokens;
+        String rawRefreshToken = current != null ? current.response().getRefreshToken() : null;
 
         if (rawRefreshToken == null) {
             log.debug("Refresh token not found, obtaining new tokens");
@@ -209,7 +256,13 @@ public class WebTokenCallable implements Callable<Mono<String>> {
     }
 
     void clearTokens() {
-        tokenResponse = null;
+        tokens = null;
+    }
+
+    private record IssuedTokens(AccessTokenResponse response, AccessToken accessToken, long refreshDueTime) {
+        boolean isRefreshDue() {
+            return Time.currentTime() >= refreshDueTime;
+        }
     }
 
 }
@@ -0,0 +1,117 @@
+package com.creatism.keycloak.webflux;
+
+import junit.framework.TestCase;
+import org.keycloak.common.util.Time;
+import org.keycloak.representations.AccessToken;
+import org.keycloak.representations.adapters.config.PolicyEnforcerConfig.PathConfig;
+import org.springframework.http.HttpMethod;
+
+import java.util.List;
+import java.util.Map;
+
+public class AuthorizationDecisionCacheTest extends TestCase {
+
+    private final PathConfig orders = path("orders-id", "/api/orders");
+    private final PathConfig invoices = path("invoices-id", "/api/invoices");
+
+    public void testDecisionExpiresWithTheIssuingToken() throws Exception {
+        AuthorizationDecisionCache cache = new AuthorizationDecisionCache(10, 60000);
+        AccessToken token = token("jti", 1);
+        AuthorizationDecisionCache.DecisionKey key = key("raw", token, orders, HttpMethod.GET, Map.of());
+
+        cache.put(key, token, token);
+        assertSame(token, cache.get(key));
+        Thread.sleep(2100);
+        assertNull(cache.get(key));
+    }
+
+    public void testDecisionExpiresWithTheFirstIssuer() throws Exception {
+        AuthorizationDecisionCache cache = new AuthorizationDecisionCache(10, -1);
+        AccessToken upgraded = token("upgraded", 60);
+        AuthorizationDecisionCache.DecisionKey key = key("raw", token("jti", 60), orders, HttpMethod.GET, Map.of());
+
+        cache.put(key, upgraded, upgraded, token("rpt", 1));
+        assertSame(upgraded, cache.get(key));
+        Thread.sleep(2100);
+        assertNull(cache.get(key));
+    }
+
+    public void testDecisionExpiresWithTheLifespan() throws Exception {
+        AuthorizationDecisionCache cache = new AuthorizationDecisionCache(10, 50);
+        AccessToken token = token("jti", 60);
+        AuthorizationDecisionCache.DecisionKey key = key("raw", token, orders, HttpMethod.GET, Map.of());
+
+        cache.put(key, token, token);
+        assertSame(token, cache.get(key));
+        Thread.sleep(100);
+        assertNull(cache.get(key));
+    }
+
+    public void testDecisionsAreKeptApart() {
+        AuthorizationDecisionCache cache = new AuthorizationDecisionCache(10, 60000);
+        AccessToken token = token("jti-1", 60);
+        AccessToken other = token("jti-2", 60);
+        Map<String, List<String>> claims = Map.of("ip", List.of("10.0.0.1"));
+        List<AuthorizationDecisionCache.DecisionKey> keys = List.of(
+                key("raw", token, orders, HttpMethod.GET, claims),
+                key("raw", token, orders, HttpMethod.POST, claims),
+                key("raw", token, orders, HttpMethod.GET, Map.of("ip", List.of("10.0.0.2"))),
+                key("raw", token, orders, HttpMethod.GET, Map.of()),
+                key("raw", other, orders, HttpMethod.GET, claims));
+        List<AccessToken> granted = List.of(token("g1", 60), token("g2", 60), token("g3", 60), token("g4", 60), token("g5", 60));
+
+        for (int i = 0; i < keys.size(); i++) {
+            cache.put(keys.get(i), granted.get(i), token);
+        }
+        assertEquals(keys.size(), cache.size());
+        for (int i = 0; i < keys.size(); i++) {
+            assertSame(granted.get(i), cache.get(keys.get(i)));
+        }
+        // the jti identifies the token whatever its encoding
+        assertSame(granted.get(0), cache.get(key("re-encoded", token, orders, HttpMethod.GET, claims)));
+        assertNull(cache.get(key("raw", token("jti-3", 60), orders, HttpMethod.GET, claims)));
+    }
+
+    public void testTokensWithoutJtiAreKeyedByTheRawToken() {
+        AuthorizationDecisionCache cache = new AuthorizationDecisionCache(10, 60000);
+        AccessToken token = token(null, 60);
+
+        cache.put(key("raw-1", token, orders, HttpMethod.GET, Map.of()), token, token);
+        assertSame(token, cache.get(key("raw-1", token, orders, HttpMethod.GET, Map.of())));
+        assertNull(cache.get(key("raw-2", token, orders, HttpMethod.GET, Map.of())));
+    }
+
+    public void testInvalidateDropsTheDecisionsOfEveryToken() {
+        AuthorizationDecisionCache cache = new AuthorizationDecisionCache(10, 60000);
+        AccessToken first = token("jti-1", 60);
+        AccessToken second = token("jti-2", 60);
+        cache.put(key("raw-1", first, orders, HttpMethod.GET, Map.of()), first, first);
+        cache.put(key("raw-1", first, orders, HttpMethod.DELETE, Map.of()), first, first);
+        cache.put(key("raw-2", second, orders, HttpMethod.GET, Map.of("ip", List.of("10.0.0.1"))), second, second);
+        cache.put(key("raw-1", first, invoices, HttpMethod.GET, Map.of()), first, first);
+
+        cache.invalidate(path("orders-id", "/api/orders"));
+
+        assertEquals(1, cache.size());
+        assertSame(first, cache.get(key("raw-1", first, invoices, HttpMethod.GET, Map.of())));
+    }
+
+    private static AuthorizationDecisionCache.DecisionKey key(String raw, AccessToken token, PathConfig pathConfig,
+                                                              HttpMethod method, Map<String, List<String>> claims) {
+        return AuthorizationDecisionCache.key(raw, token, pathConfig, method, claims);
+    }
+
+    private static PathConfig path(String id, String path) {
+        PathConfig pathConfig = new PathConfig();
+        pathConfig.setId(id);
+        pathConfig.setPath(path);
+        return pathConfig;
+    }
+
+    private static AccessToken token(String jti, int expiresIn) {
+        AccessToken token = new AccessToken();
+        token.id(jti);
+        token.exp((long) Time.currentTime() + expiresIn);
+        return token;
+    }
+}
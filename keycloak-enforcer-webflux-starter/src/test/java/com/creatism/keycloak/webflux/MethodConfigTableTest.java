@@ -0,0 +1,68 @@
+package com.creatism.keycloak.webflux;
+
+import junit.framework.TestCase;
+import org.keycloak.representations.adapters.config.PolicyEnforcerConfig.MethodConfig;
+import org.keycloak.representations.adapters.config.PolicyEnforcerConfig.PathConfig;
+import org.springframework.http.HttpMethod;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class MethodConfigTableTest extends TestCase {
+
+    public void testExtensionMethodsAreResolvedOnce() {
+        MethodConfigTable table = MethodConfigTable.compile(path(), false);
+
+        MethodConfig propfind = table.get(HttpMethod.valueOf("PROPFIND"));
+        assertSame(propfind, table.get(HttpMethod.valueOf("PROPFIND")));
+        assertEquals("PROPFIND", propfind.getMethod());
+        assertEquals(List.of("orders:read", "orders:write"), propfind.getScopes());
+        assertSame(table.get(HttpMethod.HEAD).getScopes(), propfind.getScopes());
+    }
+
+    public void testExtensionMethodsAreBounded() {
+        MethodConfigTable table = MethodConfigTable.compile(path(), true);
+        for (int i = 0; i < MethodConfigTable.MAX_EXTENSION_METHODS; i++) {
+            table.get(HttpMethod.valueOf("X-" + i));
+        }
+
+        MethodConfig overflow = table.get(HttpMethod.valueOf("X-OVERFLOW"));
+        assertEquals(List.of("X-OVERFLOW"), overflow.getScopes());
+        assertNotSame(overflow, table.get(HttpMethod.valueOf("X-OVERFLOW")));
+        assertSame(table.get(HttpMethod.valueOf("X-0")), table.get(HttpMethod.valueOf("X-0")));
+    }
+
+    public void testScopesAreInternedAndImmutable() {
+        PathConfig path = path();
+        MethodConfigTable table = MethodConfigTable.compile(path, false);
+
+        MethodConfig get = table.get(HttpMethod.GET);
+        MethodConfig post = table.get(HttpMethod.POST);
+        assertNotSame(path.getMethods().get(0), get);
+        assertEquals(List.of("orders:read"), get.getScopes());
+        assertSame(get.getScopes(), post.getScopes());
+        try {
+            get.getScopes().add("orders:write");
+            fail();
+        } catch (UnsupportedOperationException expected) {
+        }
+
+        path.getMethods().get(0).getScopes().add("orders:write");
+        assertEquals(List.of("orders:read"), table.get(HttpMethod.GET).getScopes());
+    }
+
+    private static PathConfig path() {
+        PathConfig path = new PathConfig();
+        path.setPath("/api/orders");
+        path.setScopes(new ArrayList<>(List.of("orders:read", "orders:write")));
+        path.setMethods(new ArrayList<>(List.of(method("GET"), method("POST"))));
+        return path;
+    }
+
+    private static MethodConfig method(String name) {
+        MethodConfig methodConfig = new MethodConfig();
+        methodConfig.setMethod(name);
+        methodConfig.setScopes(new ArrayList<>(List.of("orders:read")));
+        return methodConfig;
+    }
+}
@@ -0,0 +1,58 @@
+package com.creatism.keycloak.webflux;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import junit.framework.TestCase;
+import org.keycloak.representations.adapters.config.PolicyEnforcerConfig.PathConfig;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+
+public class MicrometerEnforcementMetricsTest extends TestCase {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    public void testDecisionsAreTaggedWithTheConfiguredPattern() {
+        MicrometerEnforcementMetrics metrics = new MicrometerEnforcementMetrics(registry);
+        PathConfig pattern = path("orders", "/api/orders/{id}");
+        PathConfig instance = path(null, "/api/orders/42");
+        instance.setParentConfig(pattern);
+
+        metrics.recordDecision(pattern, EnforcementMetrics.Outcome.GRANTED);
+        metrics.recordDecision(instance, EnforcementMetrics.Outcome.GRANTED);
+        metrics.recordDecision(null, EnforcementMetrics.Outcome.DENIED);
+
+        assertEquals(2.0, registry.get("keycloak.enforcer.decisions").tag("path", "/api/orders/{id}").counter().count());
+        assertEquals(1.0, registry.get("keycloak.enforcer.decisions").tag("path", "none").counter().count());
+        assertNull(registry.find("keycloak.enforcer.decisions").tag("path", "/api/orders/42").counter());
+    }
+
+    public void testPathTagsAreBounded() {
+        MicrometerEnforcementMetrics metrics = new MicrometerEnforcementMetrics(registry);
+        int paths = MicrometerEnforcementMetrics.MAX_PATH_TAGS + 100;
+        for (int i = 0; i < paths; i++) {
+            metrics.recordDecision(path(null, "/albums/" + i), EnforcementMetrics.Outcome.GRANTED);
+        }
+
+        assertEquals(MicrometerEnforcementMetrics.MAX_PATH_TAGS + 1, registry.find("keycloak.enforcer.decisions").counters().size());
+        assertEquals(100.0, registry.get("keycloak.enforcer.decisions")
+                .tag("path", MicrometerEnforcementMetrics.OTHER_PATHS).counter().count());
+    }
+
+    public void testMissingRegistryLeavesMetricsUnrecorded() {
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        KeycloakWebPolicyEnforcerAutoConfiguration.MicrometerMetricsConfiguration configuration =
+                new KeycloakWebPolicyEnforcerAutoConfiguration.MicrometerMetricsConfiguration();
+
+        assertSame(EnforcementMetrics.NOOP, configuration.enforcementMetrics(beanFactory.getBeanProvider(MeterRegistry.class)));
+
+        beanFactory.registerSingleton("meterRegistry", registry);
+        assertTrue(configuration.enforcementMetrics(beanFactory.getBeanProvider(MeterRegistry.class))
+                instanceof MicrometerEnforcementMetrics);
+    }
+
+    private static PathConfig path(String name, String path) {
+        PathConfig pathConfig = new PathConfig();
+        pathConfig.setName(name);
+        pathConfig.setPath(path);
+        return pathConfig;
+    }
+}
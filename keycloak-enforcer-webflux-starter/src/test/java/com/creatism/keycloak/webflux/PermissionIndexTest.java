@@ -0,0 +1,182 @@
+package com.creatism.keycloak.webflux;
+
+import junit.framework.TestCase;
+import org.keycloak.representations.adapters.config.PolicyEnforcerConfig.MethodConfig;
+import org.keycloak.representations.adapters.config.PolicyEnforcerConfig.PathConfig;
+import org.keycloak.representations.adapters.config.PolicyEnforcerConfig.ScopeEnforcementMode;
+import org.keycloak.representations.idm.authorization.Permission;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+public class PermissionIndexTest extends TestCase {
+
+    /**
+     * more than a mask word, so the masks of the scopes span several words
+     */
+    private static final int SCOPES = 80;
+    private static final int RESOURCES = 6;
+    private static final ScopeEnforcementMode[] MODES = {ScopeEnforcementMode.ANY, ScopeEnforcementMode.ALL,
+            ScopeEnforcementMode.DISABLED, null};
+
+    private final Random random = new Random(20240401L);
+    private final PermissionIndex.Scopes scopes = new PermissionIndex.Scopes(1000);
+
+    public void testIndexAgreesWithTheScan() {
+        for (int run = 0; run < 2000; run++) {
+            List<Permission> granted = permissions(random.nextInt(40));
+            PermissionIndex index = PermissionIndex.build(granted, scopes);
+            for (int check = 0; check < 20; check++) {
+                PathConfig pathConfig = path();
+                MethodConfig methodConfig = method(MODES[random.nextInt(MODES.length)], requiredScopes());
+
+                String context = granted + " " + pathConfig.getId() + " " + methodConfig.getScopesEnforcementMode()
+                        + " " + methodConfig.getScopes();
+                assertSame(context, scan(pathConfig, methodConfig, granted), index.find(pathConfig, methodConfig, scopes));
+                assertEquals(context, hasResource(pathConfig, granted), index.hasResource(pathConfig));
+            }
+        }
+    }
+
+    public void testEmptyRequiredScopes() {
+        Permission resourceless = new Permission(null, null, Set.of("scope-1"), null);
+        Permission own = new Permission("resource-1", "resource-1", Set.of("scope-2"), null);
+        List<Permission> granted = List.of(resourceless, own);
+        PermissionIndex index = PermissionIndex.build(granted, scopes);
+        PathConfig pathConfig = new PathConfig();
+        pathConfig.setId("resource-1");
+
+        for (ScopeEnforcementMode mode : MODES) {
+            MethodConfig methodConfig = method(mode, Collections.emptyList());
+            assertSame(String.valueOf(mode), scan(pathConfig, methodConfig, granted), index.find(pathConfig, methodConfig, scopes));
+            assertSame(String.valueOf(mode), resourceless, index.find(pathConfig, methodConfig, scopes));
+        }
+    }
+
+    public void testResourcelessPermissionsKeepTheTokenOrder() {
+        Permission own = new Permission("resource-1", "resource-1", Collections.emptySet(), null);
+        Permission resourceless = new Permission(null, null, Collections.emptySet(), null);
+        PathConfig pathConfig = new PathConfig();
+        pathConfig.setId("resource-1");
+        MethodConfig methodConfig = method(ScopeEnforcementMode.ALL, List.of("scope-1"));
+
+        assertSame(own, PermissionIndex.build(List.of(own, resourceless), scopes).find(pathConfig, methodConfig, scopes));
+        assertSame(resourceless, PermissionIndex.build(List.of(resourceless, own), scopes).find(pathConfig, methodConfig, scopes));
+    }
+
+    /**
+     * The permission granting the path as {@link WebPolicyEnforcer#isAuthorized} finds it when scanning the token.
+     */
+    private static Permission scan(PathConfig actualPathConfig, MethodConfig methodConfig, List<Permission> granted) {
+        for (Permission permission : granted) {
+            if (permission.getResourceId() != null) {
+                if (isResourcePermission(actualPathConfig, permission)) {
+                    if (actualPathConfig.isInstance() && !matchResourcePermission(actualPathConfig, permission)) {
+                        continue;
+                    }
+                    if (hasResourceScopePermission(methodConfig, permission)) {
+                        return permission;
+                    }
+                }
+            } else if (hasResourceScopePermission(methodConfig, permission)) {
+                return permission;
+            }
+        }
+        return null;
+    }
+
+    private static boolean hasResource(PathConfig actualPathConfig, List<Permission> granted) {
+        for (Permission permission : granted) {
+            if (permission.getResourceId() != null && isResourcePermission(actualPathConfig, permission)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isResourcePermission(PathConfig actualPathConfig, Permission permission) {
+        boolean resourceMatch = matchResourcePermission(actualPathConfig, permission);
+        if (!resourceMatch && actualPathConfig.isInstance()) {
+            resourceMatch = matchResourcePermission(actualPathConfig.getParentConfig(), permission);
+        }
+        return resourceMatch;
+    }
+
+    private static boolean matchResourcePermission(PathConfig actualPathConfig, Permission permission) {
+        return permission.getResourceId().equals(actualPathConfig.getId());
+    }
+
+    private static boolean hasResourceScopePermission(MethodConfig methodConfig, Permission permission) {
+        List<String> requiredScopes = methodConfig.getScopes();
+        Set<String> allowedScopes = permission.getScopes();
+
+        if (allowedScopes.isEmpty()) {
+            return true;
+        }
+
+        ScopeEnforcementMode enforcementMode = methodConfig.getScopesEnforcementMode();
+
+        if (ScopeEnforcementMode.ALL.equals(enforcementMode)) {
+            return allowedScopes.containsAll(requiredScopes);
+        }
+
+        if (ScopeEnforcementMode.ANY.equals(enforcementMode)) {
+            for (String requiredScope : requiredScopes) {
+                if (allowedScopes.contains(requiredScope)) {
+                    return true;
+                }
+            }
+        }
+
+        return requiredScopes.isEmpty();
+    }
+
+    private List<Permission> permissions(int count) {
+        List<Permission> permissions = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            // about a third of the permissions have no resource
+            String resourceId = random.nextInt(3) == 0 ? null : resource();
+            permissions.add(new Permission(resourceId, resourceId, scopeSet(random.nextInt(4)), null));
+        }
+        return permissions;
+    }
+
+    private PathConfig path() {
+        PathConfig pathConfig = new PathConfig();
+        pathConfig.setId(random.nextInt(8) == 0 ? null : resource());
+        if (random.nextBoolean()) {
+            PathConfig parent = new PathConfig();
+            parent.setId(resource());
+            pathConfig.setParentConfig(parent);
+        }
+        return pathConfig;
+    }
+
+    private List<String> requiredScopes() {
+        return new ArrayList<>(scopeSet(random.nextInt(4)));
+    }
+
+    private Set<String> scopeSet(int size) {
+        Set<String> scopeSet = new LinkedHashSet<>();
+        for (int i = 0; i < size; i++) {
+            scopeSet.add("scope-" + random.nextInt(SCOPES));
+        }
+        return scopeSet;
+    }
+
+    private String resource() {
+        return "resource-" + random.nextInt(RESOURCES);
+    }
+
+    private static MethodConfig method(ScopeEnforcementMode mode, List<String> requiredScopes) {
+        MethodConfig methodConfig = new MethodConfig();
+        methodConfig.setMethod("GET");
+        methodConfig.setScopes(requiredScopes);
+        methodConfig.setScopesEnforcementMode(mode);
+        return methodConfig;
+    }
+}
@@ -0,0 +1,53 @@
+package com.creatism.keycloak.webflux;
+
+import junit.framework.TestCase;
+import org.keycloak.common.util.Time;
+import org.keycloak.representations.AccessToken;
+import org.keycloak.representations.adapters.config.PolicyEnforcerConfig.PathConfig;
+import org.springframework.http.HttpMethod;
+
+import java.util.List;
+import java.util.Map;
+
+public class RptCacheTest extends TestCase {
+
+    public void testTokensAreIdentifiedLikeTheDecisionCache() {
+        PathConfig pathConfig = new PathConfig();
+        pathConfig.setId("orders-id");
+        AccessToken withJti = token("jti-1", 60);
+        AccessToken withoutJti = token(null, 60);
+
+        assertEquals(AuthorizationDecisionCache.key("raw-1", withJti, pathConfig, HttpMethod.GET, Map.of()).token(),
+                RptCache.key("raw-1", withJti, Map.of()).token());
+        assertEquals(RptCache.key("raw-1", withJti, Map.of()), RptCache.key("raw-2", withJti, Map.of()));
+        assertEquals("raw-1", RptCache.key("raw-1", withoutJti, Map.of()).token());
+        assertFalse(RptCache.key("raw-1", withJti, Map.of()).equals(RptCache.key("raw-1", withJti, Map.of("ip", List.of("1")))));
+    }
+
+    public void testEntryExpiresWithTheFirstIssuer() throws Exception {
+        RptCache cache = new RptCache(10);
+        RptCache.RptKey key = RptCache.key("raw", token("jti", 60), Map.of());
+        AccessToken upgraded = token("upgraded", 60);
+
+        cache.put(key, upgraded, token("jti", 60), token("rpt", 1));
+        assertSame(upgraded, cache.get(key));
+        Thread.sleep(2100);
+        assertNull(cache.get(key));
+    }
+
+    public void testTokensWithoutExpirationAreNotCached() {
+        RptCache cache = new RptCache(10);
+        RptCache.RptKey key = RptCache.key("raw", token("jti", 60), Map.of());
+
+        cache.put(key, new AccessToken(), new AccessToken());
+        cache.put(key, new AccessToken(), token("expired", -1));
+        assertEquals(0, cache.size());
+    }
+
+    private static AccessToken token(String jti, int expiresIn) {
+        AccessToken token = new AccessToken();
+        token.id(jti);
+        token.exp((long) Time.currentTime() + expiresIn);
+        return token;
+    }
+}
@@ -0,0 +1,112 @@
+package com.creatism.keycloak.webflux;
+
+import junit.framework.TestCase;
+import org.keycloak.representations.AccessToken;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class UmaRequestBatcherTest extends TestCase {
+
+    private static final UmaRequestBatcher.UmaRequest REQUEST = new UmaRequestBatcher.UmaRequest("token", true, false, Map.of());
+
+    private final List<Map<String, Set<String>>> sent = Collections.synchronizedList(new ArrayList<>());
+
+    public void testRequestsWithinTheWindowAreMerged() {
+        UmaRequestBatcher batcher = new UmaRequestBatcher(Duration.ofMillis(50), 100, this::authorize);
+
+        List<AccessToken> rpts = Mono.zip(
+                        batcher.submit(REQUEST, permissions("r1", "a")),
+                        batcher.submit(REQUEST, permissions("r2", "b")),
+                        batcher.submit(REQUEST, permissions("r1", "c")),
+                        batcher.submit(REQUEST, permissions("r3")),
+                        batcher.submit(REQUEST, permissions("r3", "d")))
+                .map(all -> List.of(all.getT1(), all.getT2(), all.getT3(), all.getT4(), all.getT5()))
+                .block();
+
+        assertEquals(1, sent.size());
+        Map<String, Set<String>> merged = new LinkedHashMap<>();
+        merged.put("r1", Set.of("a", "c"));
+        merged.put("r2", Set.of("b"));
+        // requested without scopes, the resource keeps all of them
+        merged.put("r3", null);
+        assertEquals(merged, sent.get(0));
+        for (AccessToken rpt : rpts) {
+            assertSame(rpts.get(0), rpt);
+        }
+    }
+
+    public void testOnlyIdenticalRequestsAreMerged() {
+        UmaRequestBatcher batcher = new UmaRequestBatcher(Duration.ofMillis(50), 100, this::authorize);
+        UmaRequestBatcher.UmaRequest withClaims = new UmaRequestBatcher.UmaRequest("token", true, false,
+                Map.of("ip", List.of("127.0.0.1")));
+
+        Mono.zip(batcher.submit(REQUEST, permissions("r1", "a")), batcher.submit(withClaims, permissions("r2", "b"))).block();
+
+        assertEquals(2, sent.size());
+    }
+
+    public void testFullBatchIsSentBeforeTheWindowElapses() {
+        UmaRequestBatcher batcher = new UmaRequestBatcher(Duration.ofMinutes(1), 2, this::authorize);
+
+        Mono.zip(batcher.submit(REQUEST, permissions("r1", "a")), batcher.submit(REQUEST, permissions("r2", "b")))
+                .block(Duration.ofSeconds(5));
+        assertEquals(1, sent.size());
+
+        // the next request starts a new batch
+        batcher.submit(REQUEST, permissions("r3", "c")).subscribe();
+        batcher.submit(REQUEST, permissions("r4", "d")).block(Duration.ofSeconds(5));
+        assertEquals(2, sent.size());
+        assertEquals(Set.of("r3", "r4"), sent.get(1).keySet());
+    }
+
+    public void testRequestForEveryPermissionWins() {
+        UmaRequestBatcher batcher = new UmaRequestBatcher(Duration.ofMillis(20), 100, this::authorize);
+
+        Mono.zip(batcher.submit(REQUEST, permissions("r1", "a")), batcher.submit(REQUEST, null)).block();
+
+        assertEquals(1, sent.size());
+        assertNull(sent.get(0));
+    }
+
+    public void testFailureReachesEveryWaiter() {
+        UmaRequestBatcher batcher = new UmaRequestBatcher(Duration.ofMillis(20), 100,
+                (request, permissions) -> Mono.error(new IllegalStateException("expected")));
+        Mono<AccessToken> first = batcher.submit(REQUEST, permissions("r1", "a")).cache();
+        Mono<AccessToken> second = batcher.submit(REQUEST, permissions("r2", "b")).cache();
+        first.subscribe(rpt -> { }, error -> { });
+        second.subscribe(rpt -> { }, error -> { });
+
+        for (Mono<AccessToken> waiter : List.of(first, second)) {
+            try {
+                waiter.block();
+                fail();
+            } catch (IllegalStateException expected) {
+            }
+        }
+    }
+
+    private Mono<AccessToken> authorize(UmaRequestBatcher.UmaRequest request, Map<String, Set<String>> permissions) {
+        sent.add(permissions == null ? null : copy(permissions));
+        return Mono.just(new AccessToken());
+    }
+
+    private static Map<String, Set<String>> copy(Map<String, Set<String>> permissions) {
+        Map<String, Set<String>> copy = new LinkedHashMap<>();
+        permissions.forEach((resource, scopes) -> copy.put(resource, scopes == null ? null : Set.copyOf(scopes)));
+        return copy;
+    }
+
+    private static Map<String, Set<String>> permissions(String resource, String... scopes) {
+        Map<String, Set<String>> permissions = new HashMap<>();
+        permissions.put(resource, scopes.length == 0 ? null : Set.of(scopes));
+        return permissions;
+    }
+}
@@ -0,0 +1,278 @@
+package com.creatism.keycloak.webflux;
+
+import com.creatism.keycloak.webflux.client.PathCache;
+import junit.framework.TestCase;
+import org.keycloak.AuthorizationContext;
+import org.keycloak.common.util.Time;
+import org.keycloak.representations.AccessToken;
+import org.keycloak.representations.adapters.config.PolicyEnforcerConfig;
+import org.keycloak.representations.adapters.config.PolicyEnforcerConfig.MethodConfig;
+import org.keycloak.representations.adapters.config.PolicyEnforcerConfig.PathConfig;
+import org.keycloak.representations.idm.authorization.Permission;
+import org.keycloak.representations.idm.authorization.ResourceRepresentation;
+import org.keycloak.util.JsonSerialization;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.RequestPath;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Mono;
+
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.ToLongFunction;
+
+public class WebPolicyEnforcerTest extends TestCase {
+
+    private PathCache pathCache;
+
+    public void testDeniedDeletionKeepsTheCachedInstance() {
+        WebPolicyEnforcer enforcer = enforcer();
+        try {
+            PathConfig instance = instance();
+            pathCache.put("/api/orders/42", instance);
+            AccessToken token = token(permission("owner", "alice"));
+
+            assertFalse(enforcer.isAuthorized(instance, methodConfig(), token, delete("/api/orders/42"), Collections.emptyMap()));
+            assertFalse(enforcer.isAuthorized(instance, methodConfig(), token, delete("/api/orders/42"), Map.of("owner", List.of("bob"))));
+            assertSame(instance, pathCache.get("/api/orders/42"));
+        } finally {
+            enforcer.close();
+        }
+    }
+
+    public void testGrantedDecisionHasNoSideEffect() {
+        WebPolicyEnforcer enforcer = enforcer();
+        try {
+            PathConfig instance = instance();
+            pathCache.put("/api/orders/42", instance);
+            AccessToken token = token(permission("owner", "alice"));
+
+            // the deletion only invalidates the instance once it is finally granted to the request
+            assertTrue(enforcer.isAuthorized(instance, methodConfig(), token, delete("/api/orders/42"), Map.of("owner", List.of("alice"))));
+            assertSame(instance, pathCache.get("/api/orders/42"));
+        } finally {
+            enforcer.close();
+        }
+    }
+
+    public void testDisabledStaticPathIsBypassed() {
+        WebPolicyEnforcer enforcer = loadedEnforcer(bypassConfig());
+        try {
+            AuthorizationContext context = enforcer.bypass(get("/public/logo.png"));
+            assertNotNull(context);
+            assertTrue(context.isGranted());
+        } finally {
+            enforcer.close();
+        }
+    }
+
+    public void testEnforcedPathsAreNotBypassed() {
+        WebPolicyEnforcer enforcer = loadedEnforcer(bypassConfig());
+        try {
+            // resolved by name, the path is static but enforced
+            assertNull(enforcer.bypass(get("/api/orders")));
+            // resolved by uri, the path is neither static nor disabled
+            assertNull(enforcer.bypass(get("/api/items")));
+            assertNull(enforcer.bypass(get("/unknown")));
+        } finally {
+            enforcer.close();
+        }
+    }
+
+    public void testAccessDeniedUriIsNotBypassed() {
+        WebPolicyEnforcerProperties config = bypassConfig();
+        config.setOnDenyRedirectTo("/public/denied");
+        WebPolicyEnforcer enforcer = loadedEnforcer(config);
+        try {
+            assertNull(enforcer.bypass(get("/public/denied")));
+            assertNotNull(enforcer.bypass(get("/public/logo.png")));
+        } finally {
+            enforcer.close();
+        }
+    }
+
+    public void testLazyLoadedPathsAreNotBypassed() {
+        WebPolicyEnforcerProperties config = bypassConfig();
+        config.setLazyLoadPaths(true);
+        WebPolicyEnforcer enforcer = loadedEnforcer(config);
+        try {
+            assertNull(enforcer.bypass(get("/public/logo.png")));
+        } finally {
+            enforcer.close();
+        }
+    }
+
+    public void testPathsNotLoadedYetAreNotBypassed() {
+        WebPolicyEnforcer enforcer = new WebPolicyEnforcer(bypassConfig(), null, Collections.emptyMap(), keycloak(Mono.never()));
+        try {
+            assertNull(enforcer.bypass(get("/public/logo.png")));
+        } finally {
+            enforcer.close();
+        }
+    }
+
+    public void testBypassIsOptIn() {
+        WebPolicyEnforcerProperties config = bypassConfig();
+        config.setBypassDisabledPaths(false);
+        WebPolicyEnforcer enforcer = loadedEnforcer(config);
+        try {
+            assertNull(enforcer.bypass(get("/public/logo.png")));
+        } finally {
+            enforcer.close();
+        }
+    }
+
+    private WebPolicyEnforcer enforcer() {
+        WebPolicyEnforcerProperties config = new WebPolicyEnforcerProperties();
+        config.setRealm("test");
+        config.setAuthServerUrl("http://localhost");
+        config.setResource("test");
+        config.setLazyLoadPaths(true);
+        WebPolicyEnforcer enforcer = new WebPolicyEnforcer(config, null, Collections.emptyMap());
+        enforcer.setMetrics(new EnforcementMetrics() {
+            @Override
+            public <C> void bindCache(String name, C cache, ToLongFunction<C> hitCount, ToLongFunction<C> missCount,
+                                      ToLongFunction<C> size) {
+                if (cache instanceof PathCache paths) {
+                    pathCache = paths;
+                }
+            }
+        });
+        return enforcer;
+    }
+
+    private WebPolicyEnforcer loadedEnforcer(WebPolicyEnforcerProperties config) {
+        WebPolicyEnforcer enforcer = new WebPolicyEnforcer(config, null, Collections.emptyMap(), keycloak(Mono.empty()));
+        enforcer.ready().block(Duration.ofSeconds(5));
+        return enforcer;
+    }
+
+    private static WebPolicyEnforcerProperties bypassConfig() {
+        WebPolicyEnforcerProperties config = new WebPolicyEnforcerProperties();
+        config.setRealm("test");
+        config.setAuthServerUrl("http://localhost");
+        config.setResource("test");
+        config.setCredentials(Map.of("secret", "secret"));
+        config.setBypassDisabledPaths(true);
+        PathConfig disabled = new PathConfig();
+        disabled.setPath("/public/*");
+        disabled.setEnforcementMode(PolicyEnforcerConfig.EnforcementMode.DISABLED);
+        PathConfig named = new PathConfig();
+        named.setName("orders");
+        named.setPath("/api/orders");
+        PathConfig byUri = new PathConfig();
+        byUri.setPath("/api/items");
+        config.setPaths(new ArrayList<>(List.of(disabled, named, byUri)));
+        return config;
+    }
+
+    /**
+     * @param discoveryDelay completes once the server configuration may be discovered
+     */
+    private static WebClient keycloak(Mono<Void> discoveryDelay) {
+        return WebClient.builder()
+                .exchangeFunction(request -> {
+                    String path = request.url().getPath();
+                    if (path.endsWith("/uma2-configuration")) {
+                        return discoveryDelay.then(json("{\"token_endpoint\":\"http://localhost/token\","
+                                + "\"resource_registration_endpoint\":\"http://localhost/resource_set\"}"));
+                    }
+                    if (path.equals("/token")) {
+                        return json("{\"access_token\":\"" + pat() + "\",\"expires_in\":300}");
+                    }
+                    Map<String, String> query = UriComponentsBuilder.fromUri(request.url()).build().getQueryParams().toSingleValueMap();
+                    String name = query.get("name") != null ? query.get("name") : query.get("uri");
+                    ResourceRepresentation resource = new ResourceRepresentation(name);
+                    resource.setId(name + "-id");
+                    try {
+                        return json(JsonSerialization.writeValueAsString(List.of(resource)));
+                    } catch (Exception e) {
+                        return Mono.error(e);
+                    }
+                })
+                .build();
+    }
+
+    private static Mono<ClientResponse> json(String body) {
+        return Mono.just(ClientResponse.create(HttpStatus.OK)
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .body(body)
+                .build());
+    }
+
+    private static String pat() {
+        int now = Time.currentTime();
+        String payload = "{\"jti\":\"pat\",\"iat\":" + now + ",\"exp\":" + (now + 300) + "}";
+        return encode("{\"alg\":\"none\"}") + "." + encode(payload) + "." + encode("signature");
+    }
+
+    private static String encode(String json) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private ServerHttpRequest get(String path) {
+        URI uri = URI.create("http://localhost" + path);
+        return (ServerHttpRequest) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{ServerHttpRequest.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "getMethod" -> HttpMethod.GET;
+                    case "getURI" -> uri;
+                    case "getPath" -> RequestPath.parse(uri, null);
+                    default -> null;
+                });
+    }
+
+    private static PathConfig instance() {
+        PathConfig pattern = new PathConfig();
+        pattern.setName("orders");
+        pattern.setPath("/api/orders/{id}");
+        pattern.setId("orders-id");
+        PathConfig instance = new PathConfig();
+        instance.setPath("/api/orders/42");
+        instance.setId("order-42");
+        instance.setParentConfig(pattern);
+        return instance;
+    }
+
+    private static MethodConfig methodConfig() {
+        MethodConfig methodConfig = new MethodConfig();
+        methodConfig.setMethod("DELETE");
+        methodConfig.setScopes(List.of("orders:delete"));
+        return methodConfig;
+    }
+
+    private static Permission permission(String claim, String value) {
+        return new Permission("order-42", "order-42", Set.of("orders:delete"), Map.of(claim, Set.of(value)));
+    }
+
+    private static AccessToken token(Permission permission) {
+        AccessToken token = new AccessToken();
+        AccessToken.Authorization authorization = new AccessToken.Authorization();
+        authorization.setPermissions(List.of(permission));
+        token.setAuthorization(authorization);
+        return token;
+    }
+
+    private ServerHttpRequest delete(String path) {
+        URI uri = URI.create("http://localhost" + path);
+        return (ServerHttpRequest) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{ServerHttpRequest.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "getMethod" -> HttpMethod.DELETE;
+                    case "getURI" -> uri;
+                    case "getPath" -> RequestPath.parse(uri, null);
+                    default -> null;
+                });
+    }
+}
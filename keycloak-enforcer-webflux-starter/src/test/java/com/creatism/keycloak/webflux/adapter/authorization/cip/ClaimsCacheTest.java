@@ -0,0 +1,109 @@
+package com.creatism.keycloak.webflux.adapter.authorization.cip;
+
+import junit.framework.TestCase;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+public class ClaimsCacheTest extends TestCase {
+
+    private static final ClaimsCache.ClaimsRequest REQUEST = new ClaimsCache.ClaimsRequest("GET", "http://localhost/claims",
+            List.of("a=1"), List.of());
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    public void testConcurrentLookupsShareOneCall() {
+        ClaimsCache cache = new ClaimsCache(10, 30000, 0);
+        Supplier<Mono<Map<String, List<String>>>> loader = loader(Duration.ofMillis(50));
+
+        List<Map<String, List<String>>> claims = Flux.range(0, 10)
+                .flatMap(i -> cache.get(REQUEST, loader))
+                .collectList()
+                .block();
+
+        assertEquals(1, calls.get());
+        assertEquals(10, claims.size());
+        claims.get(0).put("modified", List.of("true"));
+        assertFalse(claims.get(1).containsKey("modified"));
+        assertFalse(cache.get(REQUEST, loader).block().containsKey("modified"));
+        assertEquals(1, calls.get());
+    }
+
+    public void testResponseExpires() throws Exception {
+        ClaimsCache cache = new ClaimsCache(10, 50, 0);
+        Supplier<Mono<Map<String, List<String>>>> loader = loader(Duration.ZERO);
+
+        cache.get(REQUEST, loader).block();
+        cache.get(REQUEST, loader).block();
+        assertEquals(1, calls.get());
+
+        Thread.sleep(80);
+        cache.get(REQUEST, loader).block();
+        assertEquals(2, calls.get());
+    }
+
+    public void testFailureIsRetriedWithoutNegativeTtl() {
+        ClaimsCache cache = new ClaimsCache(10, 30000, 0);
+        Supplier<Mono<Map<String, List<String>>>> failing = failing();
+
+        assertFails(cache.get(REQUEST, failing));
+        assertFails(cache.get(REQUEST, failing));
+        assertEquals(2, calls.get());
+    }
+
+    public void testFailureIsReplayedForTheNegativeTtl() throws Exception {
+        ClaimsCache cache = new ClaimsCache(10, 30000, 100);
+        Supplier<Mono<Map<String, List<String>>>> failing = failing();
+
+        assertFails(cache.get(REQUEST, failing));
+        assertFails(cache.get(REQUEST, failing));
+        assertEquals(1, calls.get());
+
+        Thread.sleep(150);
+        assertEquals(Map.of("id", List.of("1")), cache.get(REQUEST, loader(Duration.ZERO)).block());
+        assertEquals(2, calls.get());
+    }
+
+    public void testConfiguration() {
+        Map<String, Object> config = new HashMap<>();
+        config.put("max-entries", "5");
+        config.put("ttl", " 50 ");
+        config.put("negative-ttl", 100);
+        ClaimsCache cache = ClaimsCache.create(config);
+
+        assertFails(cache.get(REQUEST, failing()));
+        assertFails(cache.get(REQUEST, failing()));
+        assertEquals(1, calls.get());
+    }
+
+    private Supplier<Mono<Map<String, List<String>>>> loader(Duration latency) {
+        return () -> Mono.fromCallable(() -> {
+            calls.incrementAndGet();
+            Map<String, List<String>> claims = new HashMap<>();
+            claims.put("id", new ArrayList<>(List.of("1")));
+            return claims;
+        }).delayElement(latency);
+    }
+
+    private Supplier<Mono<Map<String, List<String>>>> failing() {
+        return () -> Mono.fromCallable(() -> {
+            calls.incrementAndGet();
+            throw new IllegalStateException("expected");
+        });
+    }
+
+    private static void assertFails(Mono<Map<String, List<String>>> claims) {
+        try {
+            claims.block();
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+    }
+}
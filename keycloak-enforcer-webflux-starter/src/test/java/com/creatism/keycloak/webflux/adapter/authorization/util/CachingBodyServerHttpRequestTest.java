@@ -0,0 +1,88 @@
+package com.creatism.keycloak.webflux.adapter.authorization.util;
+
+import junit.framework.TestCase;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import reactor.core.publisher.Flux;
+
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CachingBodyServerHttpRequestTest extends TestCase {
+
+    private final AtomicInteger subscriptions = new AtomicInteger();
+
+    public void testBodyIsReplayedToTheHandlers() {
+        CachingBodyServerHttpRequest request = new CachingBodyServerHttpRequest(request("{\"a\":", "1}"), 64);
+
+        assertEquals("{\"a\":1}", new String(request.getCachedBody().block(), StandardCharsets.UTF_8));
+        assertEquals("{\"a\":1}", new String(request.getCachedBody().block(), StandardCharsets.UTF_8));
+        assertEquals("{\"a\":1}", read(request.getBody()));
+        assertEquals(1, subscriptions.get());
+    }
+
+    public void testOversizedBodyOnlyFailsTheCachedRead() {
+        CachingBodyServerHttpRequest request = new CachingBodyServerHttpRequest(request("0123", "4567", "89"), 5);
+
+        try {
+            request.getCachedBody().block();
+            fail();
+        } catch (DataBufferLimitException expected) {
+        }
+        assertEquals("0123456789", read(request.getBody()));
+        assertEquals(1, subscriptions.get());
+    }
+
+    public void testEmptyBody() {
+        CachingBodyServerHttpRequest request = new CachingBodyServerHttpRequest(request(), 5);
+
+        assertNull(request.getCachedBody().block());
+        assertEquals("", read(request.getBody()));
+    }
+
+    public void testUninspectedBodyStreamsThrough() {
+        CachingBodyServerHttpRequest request = new CachingBodyServerHttpRequest(request("0123", "4567"), 5);
+
+        assertEquals("01234567", read(request.getBody()));
+        assertEquals(1, subscriptions.get());
+    }
+
+    public void testUncachedBodyIsNotDrained() {
+        List<String> values = new WebRequestPlaceHolderResolver().resolve("{request.body['/a']}", request("{\"a\":1}")).block();
+
+        assertTrue(values == null || values.isEmpty());
+        assertEquals(0, subscriptions.get());
+    }
+
+    private static String read(Flux<DataBuffer> body) {
+        return body.map(buffer -> {
+                    String chunk = buffer.toString(StandardCharsets.UTF_8);
+                    DataBufferUtils.release(buffer);
+                    return chunk;
+                })
+                .collectList()
+                .map(chunks -> String.join("", chunks))
+                .block();
+    }
+
+    private ServerHttpRequest request(String... chunks) {
+        Flux<DataBuffer> body = Flux.fromArray(chunks)
+                .map(chunk -> (DataBuffer) DefaultDataBufferFactory.sharedInstance.wrap(chunk.getBytes(StandardCharsets.UTF_8)))
+                .doOnSubscribe(s -> subscriptions.incrementAndGet());
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        return (ServerHttpRequest) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{ServerHttpRequest.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "getBody" -> body;
+                    case "getHeaders" -> headers;
+                    default -> null;
+                });
+    }
+}
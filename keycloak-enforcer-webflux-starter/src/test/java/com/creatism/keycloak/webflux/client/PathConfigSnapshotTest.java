@@ -0,0 +1,98 @@
+package com.creatism.keycloak.webflux.client;
+
+import com.creatism.keycloak.webflux.WebPolicyEnforcerProperties;
+import junit.framework.TestCase;
+import org.keycloak.representations.adapters.config.PolicyEnforcerConfig.MethodConfig;
+import org.keycloak.representations.adapters.config.PolicyEnforcerConfig.PathConfig;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class PathConfigSnapshotTest extends TestCase {
+
+    public void testVersionFollowsTheConfiguredPaths() {
+        WebPolicyEnforcerProperties config = config("orders:read");
+        String version = PathConfigSnapshot.version(config);
+
+        assertEquals(version, PathConfigSnapshot.version(config("orders:read")));
+        assertFalse(version.equals(PathConfigSnapshot.version(config("orders:write"))));
+
+        WebPolicyEnforcerProperties otherUri = config("orders:read");
+        otherUri.getPaths().get(0).setPath("/api/orders/{id}");
+        assertFalse(version.equals(PathConfigSnapshot.version(otherUri)));
+
+        WebPolicyEnforcerProperties otherMethod = config("orders:read");
+        otherMethod.getPaths().get(0).getMethods().get(0).setMethod("POST");
+        assertFalse(version.equals(PathConfigSnapshot.version(otherMethod)));
+    }
+
+    public void testVersionIgnoresTheExtensions() {
+        WebPolicyEnforcerProperties config = config("orders:read");
+        String version = PathConfigSnapshot.version(config);
+        config.getSync().setInterval(1000);
+        assertEquals(version, PathConfigSnapshot.version(config));
+    }
+
+    public void testFingerprintFollowsTheServerSide() {
+        PathConfig path = path("orders:read");
+        String fingerprint = PathConfigSnapshot.fingerprint(List.of(path));
+
+        assertEquals(fingerprint, PathConfigSnapshot.fingerprint(List.of(path("orders:read"))));
+        PathConfig otherType = path("orders:read");
+        otherType.setType("urn:orders");
+        assertFalse(fingerprint.equals(PathConfigSnapshot.fingerprint(List.of(otherType))));
+        PathConfig otherId = path("orders:read");
+        otherId.setId("other");
+        assertFalse(fingerprint.equals(PathConfigSnapshot.fingerprint(List.of(otherId))));
+    }
+
+    public void testRestoredPathsHaveTheSameFingerprint() throws Exception {
+        Path dir = Files.createTempDirectory("snapshot");
+        try {
+            PathConfigSnapshot snapshot = new PathConfigSnapshot(dir.resolve("paths.json.gz").toString(), true);
+            Map<String, PathConfig> paths = new LinkedHashMap<>();
+            PathConfig path = path("orders:read");
+            paths.put(path.getPath(), path);
+
+            assertNull(snapshot.read().block());
+            snapshot.write("v1", paths).block();
+            PathConfigSnapshot.Snapshot restored = snapshot.read().block();
+
+            assertEquals("v1", restored.version());
+            assertEquals(PathConfigSnapshot.fingerprint(paths.values()),
+                    PathConfigSnapshot.fingerprint(restored.paths().values()));
+        } finally {
+            try (var files = Files.list(dir)) {
+                for (Path file : files.toList()) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(dir);
+        }
+    }
+
+    private static WebPolicyEnforcerProperties config(String scope) {
+        WebPolicyEnforcerProperties config = new WebPolicyEnforcerProperties();
+        List<PathConfig> paths = new ArrayList<>();
+        paths.add(path(scope));
+        config.setPaths(paths);
+        return config;
+    }
+
+    private static PathConfig path(String scope) {
+        PathConfig path = new PathConfig();
+        path.setName("orders");
+        path.setPath("/api/orders");
+        path.setId("orders-id");
+        MethodConfig method = new MethodConfig();
+        method.setMethod("GET");
+        method.setScopes(new ArrayList<>(List.of(scope)));
+        path.setMethods(new ArrayList<>(List.of(method)));
+        path.setScopes(new ArrayList<>(List.of(scope)));
+        return path;
+    }
+}
@@ -0,0 +1,155 @@
+package com.creatism.keycloak.webflux.client;
+
+import com.creatism.keycloak.webflux.WebPolicyEnforcerProperties;
+import com.creatism.keycloak.webflux.client.resources.WebProtectedResource;
+import com.creatism.keycloak.webflux.client.resources.WebProtectionResource;
+import com.creatism.keycloak.webflux.client.util.WebTokenCallable;
+import junit.framework.TestCase;
+import org.keycloak.representations.adapters.config.PolicyEnforcerConfig.MethodConfig;
+import org.keycloak.representations.adapters.config.PolicyEnforcerConfig.PathConfig;
+import org.keycloak.representations.idm.authorization.ResourceRepresentation;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class WebPathConfigMatcherTest extends TestCase {
+
+    private final AtomicInteger lookups = new AtomicInteger();
+
+    public void testLoadingLeavesTheConfiguredPathsUntouched() {
+        WebPolicyEnforcerProperties config = config(0);
+        WebPathConfigMatcher matcher = new WebPathConfigMatcher(config, authzClient());
+        try {
+            matcher.ready().block();
+
+            PathConfig loaded = matcher.matches("/api/orders");
+            assertEquals("orders-id", loaded.getId());
+            assertTrue(loaded.isStatic());
+            assertEquals(2, loaded.getMethods().size());
+            assertEquals(List.of("orders:read", "orders:write"), loaded.getScopes());
+
+            for (PathConfig configured : config.getPaths()) {
+                assertNull(configured.getId());
+                assertFalse(configured.isStatic());
+                assertEquals(1, configured.getMethods().size());
+                assertEquals(1, configured.getScopes().size());
+            }
+        } finally {
+            matcher.close();
+        }
+    }
+
+    public void testUnchangedResourcesAreNotReinstalled() throws Exception {
+        WebPathConfigMatcher matcher = new WebPathConfigMatcher(config(20), authzClient());
+        try {
+            matcher.ready().block();
+            PathConfig installed = matcher.matches("/api/orders");
+            matcher.getPathCache().put("/api/orders", installed);
+
+            int initialLookups = lookups.get();
+            long deadline = System.currentTimeMillis() + 5000;
+            while (lookups.get() < initialLookups + 10 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            assertTrue("reconciled " + (lookups.get() - initialLookups), lookups.get() >= initialLookups + 10);
+
+            PathConfig current = matcher.matches("/api/orders");
+            assertSame(installed, current);
+            assertEquals(2, current.getMethods().size());
+            assertEquals(2, current.getScopes().size());
+            assertSame(installed, matcher.getPathCache().get("/api/orders"));
+            assertEquals(1, matcher.getPaths().size());
+        } finally {
+            matcher.close();
+        }
+    }
+
+    public void testClosingStopsTheSnapshotReconciliation() throws Exception {
+        Path snapshot = Files.createTempFile("paths", ".snapshot");
+        Files.delete(snapshot);
+        try {
+            WebPolicyEnforcerProperties config = config(0);
+            config.getSnapshot().setFile(snapshot.toString());
+            WebPathConfigMatcher loading = new WebPathConfigMatcher(config, authzClient());
+            loading.ready().block();
+            loading.close();
+            byte[] written = Files.readAllBytes(snapshot);
+
+            // the server changed meanwhile and answers slowly
+            WebPathConfigMatcher restoring = new WebPathConfigMatcher(config, authzClient(Duration.ofMillis(200), "-changed"));
+            restoring.ready().block();
+            restoring.close();
+
+            Thread.sleep(400);
+            assertEquals("orders-id", restoring.matches("/api/orders").getId());
+            assertTrue(Arrays.equals(written, Files.readAllBytes(snapshot)));
+        } finally {
+            Files.deleteIfExists(snapshot);
+        }
+    }
+
+    private WebPolicyEnforcerProperties config(long syncInterval) {
+        WebPolicyEnforcerProperties config = new WebPolicyEnforcerProperties();
+        List<PathConfig> paths = new ArrayList<>();
+        paths.add(path("GET", "orders:read"));
+        paths.add(path("POST", "orders:write"));
+        config.setPaths(paths);
+        config.getSync().setInterval(syncInterval);
+        return config;
+    }
+
+    private static PathConfig path(String method, String scope) {
+        PathConfig path = new PathConfig();
+        path.setName("orders");
+        path.setPath("/api/orders");
+        MethodConfig methodConfig = new MethodConfig();
+        methodConfig.setMethod(method);
+        methodConfig.setScopes(new ArrayList<>(List.of(scope)));
+        path.setMethods(new ArrayList<>(List.of(methodConfig)));
+        path.setScopes(new ArrayList<>(List.of(scope)));
+        return path;
+    }
+
+    private WebAuthzClient authzClient() {
+        return authzClient(Duration.ZERO, "");
+    }
+
+    private WebAuthzClient authzClient(Duration latency, String idSuffix) {
+        WebClient http = WebClient.create();
+        WebConfiguration configuration = new WebConfiguration("http://localhost", "test", "test", null, http);
+        WebTokenCallable pat = new WebTokenCallable(http, configuration, null);
+        WebProtectedResource protectedResource = new WebProtectedResource(http, null, configuration, pat) {
+            @Override
+            public Mono<ResourceRepresentation> findByName(String name) {
+                lookups.incrementAndGet();
+                ResourceRepresentation resource = new ResourceRepresentation(name, "/api/orders");
+                resource.setId(name + "-id" + idSuffix);
+                return Mono.just(resource).delayElement(latency);
+            }
+        };
+        WebProtectionResource protection = new WebProtectionResource(http, null, configuration, pat) {
+            @Override
+            public WebProtectedResource resource() {
+                return protectedResource;
+            }
+        };
+        return new WebAuthzClient(configuration) {
+            @Override
+            public Mono<WebAuthzClient> ready() {
+                return Mono.just(this);
+            }
+
+            @Override
+            public WebProtectionResource protection() {
+                return protection;
+            }
+        };
+    }
+}
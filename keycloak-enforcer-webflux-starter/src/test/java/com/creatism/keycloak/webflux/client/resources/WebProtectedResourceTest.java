@@ -0,0 +1,85 @@
+package com.creatism.keycloak.webflux.client.resources;
+
+import com.creatism.keycloak.webflux.client.util.WebTokenCallable;
+import junit.framework.TestCase;
+import org.keycloak.authorization.client.representation.ServerConfiguration;
+import org.keycloak.representations.idm.authorization.ResourceRepresentation;
+import org.keycloak.util.JsonSerialization;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class WebProtectedResourceTest extends TestCase {
+
+    private final List<String> pages = new ArrayList<>();
+
+    public void testPagesUntilAShortPage() throws Exception {
+        List<ResourceRepresentation> resources = resource(7).findAll(3).collectList().block();
+
+        assertEquals(7, resources.size());
+        assertEquals("resource-6", resources.get(6).getName());
+        assertEquals(List.of("0:3", "3:3", "6:3"), pages);
+    }
+
+    public void testStopsAtAnEmptyPage() throws Exception {
+        List<ResourceRepresentation> resources = resource(6).findAll(3).collectList().block();
+
+        assertEquals(6, resources.size());
+        assertEquals(List.of("0:3", "3:3", "6:3"), pages);
+    }
+
+    public void testRejectsNonPositivePageSize() throws Exception {
+        WebProtectedResource resource = resource(1);
+        try {
+            resource.findAll(0);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            resource.findAll(-1);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        assertTrue(pages.isEmpty());
+    }
+
+    private WebProtectedResource resource(int total) throws Exception {
+        WebClient http = WebClient.builder()
+                .exchangeFunction(request -> {
+                    Map<String, String> query = UriComponentsBuilder.fromUri(request.url()).build().getQueryParams().toSingleValueMap();
+                    int first = Integer.parseInt(query.get("first"));
+                    int max = Integer.parseInt(query.get("max"));
+                    pages.add(first + ":" + max);
+                    List<ResourceRepresentation> page = new ArrayList<>();
+                    for (int i = first; i < Math.min(total, first + max); i++) {
+                        page.add(new ResourceRepresentation("resource-" + i));
+                    }
+                    try {
+                        return Mono.just(ClientResponse.create(HttpStatus.OK)
+                                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                                .body(JsonSerialization.writeValueAsString(page))
+                                .build());
+                    } catch (Exception e) {
+                        return Mono.error(e);
+                    }
+                })
+                .build();
+        ServerConfiguration serverConfiguration = JsonSerialization.readValue(
+                "{\"resource_registration_endpoint\":\"http://localhost/resource_set\"}", ServerConfiguration.class);
+        WebTokenCallable pat = new WebTokenCallable(http, null, serverConfiguration) {
+            @Override
+            public Mono<String> call() {
+                return Mono.just("token");
+            }
+        };
+        return new WebProtectedResource(http, serverConfiguration, null, pat);
+    }
+}
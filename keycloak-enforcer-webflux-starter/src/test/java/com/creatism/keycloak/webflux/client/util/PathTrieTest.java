@@ -0,0 +1,134 @@
+package com.creatism.keycloak.webflux.client.util;
+
+import junit.framework.TestCase;
+import org.keycloak.common.util.PathMatcher;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Differential test of {@link PathTrie} against the linear {@link PathMatcher}.
+ */
+public class PathTrieTest extends TestCase {
+
+    private static final String[] PATTERN_SEGMENTS = {"api", "v1", "users", "{id}", "{name}", "items", "*", "*.js",
+            "static", "a", "ab", "api*"};
+    private static final String[] TARGET_SEGMENTS = {"api", "v1", "users", "42", "items", "app.js", "static", "a",
+            "ab", "abc", "apix"};
+    private static final String[] FIXED_PATTERNS = {"/", "/*", "*", "/api", "/api/*", "/api/{id}", "/api/{id}/*",
+            "/api/{id}/items/{name}", "/static/*.js", "/*.js", "/api*", "/users/{id}/items"};
+
+    public void testMatchesLikeLinearMatcher() {
+        Random random = new Random(20240318L);
+        for (int round = 0; round < 50; round++) {
+            List<Path> paths = randomPaths(random, 5 + random.nextInt(60));
+            PathTrie<Path> trie = PathTrie.of(paths, Path::path);
+
+            for (int i = 0; i < 200; i++) {
+                assertSameMatch(paths, trie, randomTarget(random));
+            }
+
+            // removals must keep the trie in sync with the remaining paths
+            for (int i = 0; i < paths.size() / 3; i++) {
+                Path removed = paths.remove(random.nextInt(paths.size()));
+                trie = trie.without(removed);
+            }
+            assertEquals(paths.size(), trie.size());
+            for (int i = 0; i < 200; i++) {
+                assertSameMatch(paths, trie, randomTarget(random));
+            }
+        }
+    }
+
+    public void testTrailingWildcardMatchesParent() {
+        Path wildcard = new Path("/api/*");
+        PathTrie<Path> trie = PathTrie.of(List.of(new Path("/other"), wildcard), Path::path);
+
+        assertSame(wildcard, trie.match("/api"));
+        assertSame(wildcard, trie.match("/api/users/1"));
+        assertNull(trie.match("/ap"));
+    }
+
+    public void testUnderPrefixInRegistrationOrder() {
+        Path orders = new Path("/api/orders");
+        Path order = new Path("/api/orders/{id}");
+        Path items = new Path("/api/orders/{id}/items");
+        Path users = new Path("/api/users/*");
+        PathTrie<Path> trie = PathTrie.of(List.of(new Path("/app"), orders, new Path("/*.js"), order, users, items,
+                new Path("/other/api/orders")), Path::path);
+
+        assertEquals(List.of(orders, order, users, items), trie.underPrefix("/api/", 10));
+        assertEquals(List.of(order, items), trie.underPrefix("/api/orders/", 10));
+        // the prefix may end in the middle of an edge
+        assertEquals(List.of(orders, order, items), trie.underPrefix("/api/ord", 10));
+        assertEquals(List.of(orders, order), trie.underPrefix("/api/", 2));
+        assertTrue(trie.underPrefix("/api/x", 10).isEmpty());
+        assertTrue(trie.underPrefix("/apx", 10).isEmpty());
+    }
+
+    private void assertSameMatch(List<Path> paths, PathTrie<Path> trie, String target) {
+        PathMatcher<Path> linear = new PathMatcher<Path>() {
+            @Override
+            protected String getPath(Path entry) {
+                return entry.path();
+            }
+
+            @Override
+            protected Collection<Path> getPaths() {
+                return paths;
+            }
+        };
+        Object expected = outcome(() -> linear.matches(target));
+        Object actual = outcome(() -> trie.match(target));
+        assertSame("target " + target + " over " + paths, expected, actual);
+    }
+
+    private static Object outcome(Supplier<Path> match) {
+        try {
+            return match.get();
+        } catch (RuntimeException e) {
+            return e.getClass();
+        }
+    }
+
+    private static List<Path> randomPaths(Random random, int count) {
+        List<Path> paths = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            if (random.nextInt(4) == 0) {
+                paths.add(new Path(FIXED_PATTERNS[random.nextInt(FIXED_PATTERNS.length)]));
+                continue;
+            }
+            StringBuilder path = new StringBuilder();
+            int depth = 1 + random.nextInt(4);
+            for (int j = 0; j < depth; j++) {
+                path.append('/').append(PATTERN_SEGMENTS[random.nextInt(PATTERN_SEGMENTS.length)]);
+            }
+            paths.add(new Path(path.toString()));
+        }
+        return paths;
+    }
+
+    private static String randomTarget(Random random) {
+        StringBuilder target = new StringBuilder();
+        int depth = random.nextInt(5);
+        for (int j = 0; j < depth; j++) {
+            target.append('/').append(TARGET_SEGMENTS[random.nextInt(TARGET_SEGMENTS.length)]);
+        }
+        return target.length() == 0 ? "/" : target.toString();
+    }
+
+    private record Path(String path) {
+        @Override
+        public boolean equals(Object o) {
+            return this == o;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(this);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.creatism.keycloak.webflux.client.util;
+
+import junit.framework.TestCase;
+import org.keycloak.common.util.Time;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class SegmentedLruCacheTest extends TestCase {
+
+    public void testSizeStaysWithinCapacity() {
+        SegmentedLruCache<Integer, Integer> cache = new SegmentedLruCache<>(1000, -1);
+        for (int i = 0; i < 100_000; i++) {
+            cache.put(i, i);
+            assertTrue("size " + cache.size() + " after " + i, cache.size() <= 1000);
+        }
+        assertTrue(cache.size() > 900);
+    }
+
+    public void testSizeStaysWithinCapacityUnderConcurrentWrites() throws Exception {
+        SegmentedLruCache<Integer, Integer> cache = new SegmentedLruCache<>(512, -1);
+        Thread[] writers = new Thread[8];
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        for (int t = 0; t < writers.length; t++) {
+            int offset = t * 1_000_000;
+            writers[t] = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < 50_000; i++) {
+                        cache.put(offset + i, i);
+                        cache.get(offset + i / 2);
+                    }
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            });
+            writers[t].start();
+        }
+        start.countDown();
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        assertNull(failure.get());
+        // racing writers may leave a small overflow, the next insertion of the segment trims it
+        cache.put(-1, -1);
+        assertTrue("size " + cache.size(), cache.size() <= 512 + writers.length);
+    }
+
+    public void testRecentlyReadEntriesSurviveEviction() {
+        SegmentedLruCache<Integer, Integer> cache = new SegmentedLruCache<>(64, -1);
+        for (int i = 0; i < 10; i++) {
+            cache.put(i, i);
+        }
+        for (int i = 10; i < 10_000; i++) {
+            for (int hot = 0; hot < 10; hot++) {
+                cache.get(hot);
+            }
+            cache.put(i, i);
+        }
+        int survivors = 0;
+        for (int hot = 0; hot < 10; hot++) {
+            if (cache.get(hot) != null) {
+                survivors++;
+            }
+        }
+        assertTrue("hot survivors " + survivors, survivors >= 8);
+    }
+
+    public void testEntriesExpire() {
+        SegmentedLruCache<String, String> cache = new SegmentedLruCache<>(10, 5_000);
+        cache.put("expired", "v", Time.currentTimeMillis() - 1);
+        cache.put("eternal", "v", -1);
+        cache.put("default", "v");
+
+        assertNull(cache.get("expired"));
+        assertEquals("v", cache.get("eternal"));
+        assertEquals("v", cache.get("default"));
+
+        Time.setOffset(10);
+        try {
+            assertNull(cache.get("default"));
+            assertEquals("v", cache.get("eternal"));
+        } finally {
+            Time.setOffset(0);
+        }
+        assertEquals(2, cache.missCount());
+        assertEquals(3, cache.hitCount());
+    }
+
+    public void testPutIfAbsentReplacesExpiredEntry() {
+        SegmentedLruCache<String, String> cache = new SegmentedLruCache<>(10, -1);
+        cache.put("key", "stale", Time.currentTimeMillis() - 1);
+
+        assertNull(cache.putIfAbsent("key", "fresh"));
+        assertEquals("fresh", cache.get("key"));
+        assertEquals("fresh", cache.putIfAbsent("key", "other"));
+        assertEquals("fresh", cache.get("key"));
+    }
+
+    public void testConditionalRemoveKeepsRefreshedEntry() {
+        SegmentedLruCache<String, String> cache = new SegmentedLruCache<>(10, -1);
+        String first = new String("v");
+        String refreshed = new String("v");
+        cache.put("key", first);
+        cache.put("key", refreshed);
+
+        // values are compared by identity
+        assertFalse(cache.remove("key", first));
+        assertSame(refreshed, cache.get("key"));
+        assertTrue(cache.remove("key", refreshed));
+        assertNull(cache.get("key"));
+        assertFalse(cache.remove("missing", refreshed));
+    }
+
+    public void testRemoveIfAndClear() {
+        SegmentedLruCache<Integer, Integer> cache = new SegmentedLruCache<>(100, -1);
+        for (int i = 0; i < 50; i++) {
+            cache.put(i, i);
+        }
+        cache.removeIf(k -> k % 2 == 0);
+        assertEquals(25, cache.size());
+        assertNull(cache.get(2));
+        assertEquals(Integer.valueOf(3), cache.get(3));
+        cache.clear();
+        assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,109 @@
+package com.creatism.keycloak.webflux.client.util;
+
+import com.creatism.keycloak.webflux.client.WebConfiguration;
+import junit.framework.TestCase;
+import org.keycloak.common.util.Time;
+import org.keycloak.representations.AccessTokenResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class WebTokenCallableTest extends TestCase {
+
+    private final AtomicInteger grants = new AtomicInteger();
+
+    public void testConcurrentCallersShareOneGrant() {
+        WebTokenCallable callable = callable(100, 0, Duration.ofMillis(50));
+
+        List<String> tokens = Flux.range(0, 10)
+                .flatMap(i -> Mono.defer(callable::call))
+                .collectList()
+                .block();
+
+        assertEquals(1, grants.get());
+        assertEquals(10, tokens.size());
+        assertEquals(1, tokens.stream().distinct().count());
+        assertEquals(tokens.get(0), callable.call().block());
+        assertEquals(1, grants.get());
+    }
+
+    public void testTokenIsRefreshedInBackgroundAheadOfExpiry() throws Exception {
+        // past the last fifth of its lifetime, the token is still served while a new one is requested
+        WebTokenCallable callable = callable(100, 90, Duration.ZERO);
+        String first = callable.call().block();
+        assertEquals(1, grants.get());
+
+        String served = callable.call().block();
+        assertEquals(first, served);
+        // the refreshed token is served once its grant completed
+        String refreshed = first;
+        long deadline = System.currentTimeMillis() + 5000;
+        while (refreshed.equals(first) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+            refreshed = callable.call().block();
+        }
+        assertFalse(first.equals(refreshed));
+        assertTrue(grants.get() >= 2);
+    }
+
+    public void testFailedGrantIsRetriedByTheNextCaller() {
+        AtomicInteger failures = new AtomicInteger(1);
+        WebTokenCallable callable = new WebTokenCallable(WebClient.create(), configuration(), null) {
+            @Override
+            Mono<AccessTokenResponse> clientCredentialsGrant() {
+                grants.incrementAndGet();
+                if (failures.getAndDecrement() > 0) {
+                    return Mono.error(new IllegalStateException("expected"));
+                }
+                return Mono.just(response(100, 0));
+            }
+        };
+
+        try {
+            callable.call().block();
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        assertNotNull(callable.call().block());
+        assertEquals(2, grants.get());
+    }
+
+    /**
+     * @param lifetime seconds between the issuance and the expiry of the tokens
+     * @param age      seconds the tokens were issued before the grant
+     */
+    private WebTokenCallable callable(int lifetime, int age, Duration latency) {
+        return new WebTokenCallable(WebClient.create(), configuration(), null) {
+            @Override
+            Mono<AccessTokenResponse> clientCredentialsGrant() {
+                return Mono.fromCallable(() -> {
+                    grants.incrementAndGet();
+                    return response(lifetime, age);
+                }).delayElement(latency);
+            }
+        };
+    }
+
+    private static WebConfiguration configuration() {
+        return new WebConfiguration("http://localhost", "test", "test", null, WebClient.create());
+    }
+
+    private AccessTokenResponse response(int lifetime, int age) {
+        int iat = Time.currentTime() - age;
+        String payload = "{\"jti\":\"token-" + grants.get() + "-" + System.nanoTime() + "\",\"iat\":" + iat
+                + ",\"exp\":" + (iat + lifetime) + "}";
+        AccessTokenResponse response = new AccessTokenResponse();
+        response.setToken(encode("{\"alg\":\"none\"}") + "." + encode(payload) + "." + encode("signature"));
+        return response;
+    }
+
+    private static String encode(String json) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(json.getBytes(StandardCharsets.UTF_8));
+    }
+}